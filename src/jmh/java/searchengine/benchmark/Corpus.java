@@ -0,0 +1,35 @@
+package searchengine.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Страницы-образцы из src/jmh/resources/corpus. Чтобы получить страницу нужного размера,
+ * статья внутри страницы повторяется заданное число раз.
+ */
+final class Corpus {
+
+    private Corpus() {
+    }
+
+    static String load(String name) {
+        try (InputStream in = Corpus.class.getResourceAsStream("/corpus/" + name + ".html")) {
+            if (in == null) {
+                throw new IllegalArgumentException("Нет страницы в корпусе: " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static String scaled(String name, int copies) {
+        String html = load(name);
+        int start = html.indexOf("<article");
+        int end = html.indexOf("</article>") + "</article>".length();
+        String article = html.substring(start, end);
+        return html.substring(0, start) + article.repeat(copies) + html.substring(end);
+    }
+}
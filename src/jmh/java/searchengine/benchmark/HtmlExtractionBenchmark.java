@@ -0,0 +1,48 @@
+package searchengine.benchmark;
+
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.*;
+import searchengine.services.TextProcessingServiceImpl;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HtmlExtractionBenchmark {
+
+    @Param({"ru-article", "en-article"})
+    private String corpus;
+
+    @Param({"1", "10", "100"})
+    private int copies;
+
+    private TextProcessingServiceImpl textProcessingService;
+    private String html;
+
+    @Setup
+    public void setUp() throws IOException {
+        textProcessingService = new TextProcessingServiceImpl();
+        html = Corpus.scaled(corpus, copies);
+    }
+
+    @Benchmark
+    public Object parse() {
+        return Jsoup.parse(html);
+    }
+
+    @Benchmark
+    public String extractText() {
+        return textProcessingService.extractText(Jsoup.parse(html));
+    }
+
+    @Benchmark
+    public String serialize() {
+        // Так SiteCrawler.processPage получает content для сохранения
+        return Jsoup.parse(html).html();
+    }
+}
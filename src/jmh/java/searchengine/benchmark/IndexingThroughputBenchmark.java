@@ -0,0 +1,161 @@
+package searchengine.benchmark;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import searchengine.Application;
+import searchengine.model.Site;
+import searchengine.repository.PageRepository;
+import searchengine.repository.SiteRepository;
+import searchengine.services.IndexingService;
+
+import javax.persistence.EntityManagerFactory;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Сквозной замер индексации: обход, разбор, лемматизация и запись в БД против локального
+ * {@link SyntheticSiteServer} и H2 в памяти. Это не JMH-бенчмарк, а отдельный прогон,
+ * потому что интересна пропускная способность всего конвейера, а не отдельного метода.
+ * Индексация запускается через {@link IndexingService#startIndexing()}, как из API,
+ * и замер длится, пока isIndexing() не станет false: в него входят аренды, теневое
+ * поколение, PageRank и переключение поколения.
+ * <p>
+ * Параметры передаются как key=value: pages, fanOut, depth, latencyMs, errorRate, warmupPages.
+ * Пример: {@code mvn -P jmh compile exec:exec -Dbench.main=searchengine.benchmark.IndexingThroughputBenchmark
+ * -Djmh.args="pages=2000 latencyMs=20"}
+ */
+public class IndexingThroughputBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> params = parse(args);
+        int pages = Integer.parseInt(params.getOrDefault("pages", "500"));
+        // Обходчик пока идёт только по ссылкам главной страницы, поэтому по умолчанию она ссылается
+        // на все страницы, а страницы глубже первого уровня (depth > 1) не индексируются
+        int fanOut = Integer.parseInt(params.getOrDefault("fanOut", String.valueOf(pages)));
+        int depth = Integer.parseInt(params.getOrDefault("depth", "1"));
+        long latencyMs = Long.parseLong(params.getOrDefault("latencyMs", "0"));
+        double errorRate = Double.parseDouble(params.getOrDefault("errorRate", "0"));
+        int warmupPages = Integer.parseInt(params.getOrDefault("warmupPages", "50"));
+
+        // Прогрев JIT на отдельном маленьком сайте в отдельном контексте со своей БД
+        try (SyntheticSiteServer warmupSite = new SyntheticSiteServer(warmupPages, warmupPages, 1, 0, 0);
+             ConfigurableApplicationContext context = start(warmupSite.url(), "warmup")) {
+            index(context);
+        }
+
+        try (SyntheticSiteServer site = new SyntheticSiteServer(pages, fanOut, depth, latencyMs, errorRate);
+             ConfigurableApplicationContext context = start(site.url(), "bench")) {
+
+            Statistics statistics = context.getBean(EntityManagerFactory.class)
+                    .unwrap(SessionFactory.class).getStatistics();
+
+            statistics.clear();
+            resetPeakUsage();
+            long cpuBefore = processCpuNanos();
+            long started = System.nanoTime();
+
+            String failure = null;
+            try {
+                index(context);
+            } catch (Exception e) {
+                failure = e.getMessage();
+            }
+
+            long elapsed = System.nanoTime() - started;
+            long cpu = processCpuNanos() - cpuBefore;
+
+            SiteRepository siteRepository = context.getBean(SiteRepository.class);
+            long indexed = siteRepository.findFirstByUrlAndLiveTrueOrderByIdDesc(site.url())
+                    .map(row -> context.getBean(PageRepository.class).countBySite(row))
+                    .orElse(0L);
+            if (failure == null && indexed == 0) {
+                failure = siteRepository.findAll().stream()
+                        .max(Comparator.comparing(Site::getId))
+                        .map(Site::getLastError)
+                        .orElse("сайт не проиндексирован");
+            }
+            double seconds = elapsed / 1e9;
+
+            System.out.println();
+            System.out.printf("pages requested      %d (server saw %d requests)%n", pages + 1, site.requests());
+            System.out.printf("pages indexed        %d%n", indexed);
+            System.out.printf("wall time            %.2f s%n", seconds);
+            System.out.printf("throughput           %.1f pages/s%n", indexed / seconds);
+            System.out.printf("cpu time             %.2f s (%.0f%% of one core)%n", cpu / 1e9, 100.0 * cpu / elapsed);
+            System.out.printf("cpu per page         %.2f ms%n", indexed == 0 ? 0 : cpu / 1e6 / indexed);
+            System.out.printf("peak heap            %.1f MB%n", peakHeapBytes() / 1024.0 / 1024.0);
+            System.out.printf("sql statements       %d (%.1f per page)%n", statistics.getPrepareStatementCount(),
+                    indexed == 0 ? 0 : (double) statistics.getPrepareStatementCount() / indexed);
+            System.out.printf("transactions         %d%n", statistics.getTransactionCount());
+            if (failure != null) {
+                System.out.printf("crawl failed         %s%n", failure);
+            }
+        }
+    }
+
+    // Запускает индексацию, как /api/startIndexing, и ждёт её окончания
+    private static void index(ConfigurableApplicationContext context) throws Exception {
+        IndexingService indexingService = context.getBean(IndexingService.class);
+        indexingService.startIndexing();
+        while (indexingService.isIndexing()) {
+            Thread.sleep(20);
+        }
+    }
+
+    private static ConfigurableApplicationContext start(String siteUrl, String name) {
+        SpringApplication application = new SpringApplication(Application.class);
+        application.setWebApplicationType(WebApplicationType.NONE);
+        return application.run(
+                "--spring.datasource.url=jdbc:h2:mem:" + name + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                "--spring.jpa.properties.hibernate.generate_statistics=true",
+                "--spring.jpa.show-sql=false",
+                "--logging.level.root=WARN",
+                "--logging.level.org.hibernate.engine.internal.StatisticalLoggingSessionEventListener=OFF",
+                "--app.crawlDelayMs=0",
+                // Загрузка снимка при старте и повторный обход не должны попадать в замер
+                "--app.snapshotImportOnStart=false",
+                "--app.recrawlEnabled=false",
+                // Страницы заглушки собраны из одних абзацев и иначе записались бы псевдонимами
+                "--app.duplicateDetection=false",
+                "--indexing-settings.siteConfigs[0].url=" + siteUrl,
+                "--indexing-settings.siteConfigs[0].name=" + name);
+    }
+
+    private static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getProcessCpuTime();
+    }
+
+    private static void resetPeakUsage() {
+        ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+    }
+
+    private static long peakHeapBytes() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .mapToLong(pool -> pool.getPeakUsage().getUsed())
+                .sum();
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> params = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Ожидается key=value: " + arg);
+            }
+            params.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        return params;
+    }
+}
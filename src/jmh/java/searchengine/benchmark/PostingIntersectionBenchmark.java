@@ -0,0 +1,88 @@
+package searchengine.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import searchengine.services.PositionCodec;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пересечение списков страниц по леммам запроса и декодирование позиций слов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PostingIntersectionBenchmark {
+
+    // Вариант listRetainAll квадратичный, поэтому самая редкая лемма не больше 10000 страниц
+    @Param({"1000", "10000"})
+    private int rarestPostings;
+
+    @Param({"2", "4"})
+    private int lemmas;
+
+    private List<List<Long>> postings;
+    private byte[] encodedPositions;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        postings = new ArrayList<>();
+        // Каждая следующая лемма встречается в 4 раза чаще предыдущей
+        for (int i = 0; i < lemmas; i++) {
+            int size = rarestPostings << (2 * i);
+            int universe = size * 3;
+            List<Long> pageIds = new ArrayList<>(size);
+            for (int j = 0; j < size; j++) {
+                pageIds.add((long) random.nextInt(universe));
+            }
+            postings.add(pageIds);
+        }
+
+        int[] positions = new int[2_000];
+        int position = 0;
+        for (int i = 0; i < positions.length; i++) {
+            position += 1 + random.nextInt(40);
+            positions[i] = position;
+        }
+        encodedPositions = PositionCodec.encode(positions);
+    }
+
+    /**
+     * Как в SearchServiceImpl.searchSite: начиная с самой редкой леммы, каждый следующий
+     * список страниц (List из репозитория) перед retainAll копируется в HashSet.
+     */
+    @Benchmark
+    public Set<Long> hashSetRetainAll() {
+        Set<Long> pageIds = new HashSet<>(postings.get(0));
+        for (int i = 1; i < postings.size() && !pageIds.isEmpty(); i++) {
+            pageIds.retainAll(new HashSet<>(postings.get(i)));
+        }
+        return pageIds;
+    }
+
+    /**
+     * retainAll прямо со списком из репозитория: contains у списка линейный, и пересечение
+     * получается O(n·m). Так searchSite работал до копирования в HashSet.
+     */
+    @Benchmark
+    public Set<Long> listRetainAll() {
+        Set<Long> pageIds = new HashSet<>(postings.get(0));
+        for (int i = 1; i < postings.size() && !pageIds.isEmpty(); i++) {
+            pageIds.retainAll(postings.get(i));
+        }
+        return pageIds;
+    }
+
+    @Benchmark
+    public int[] decodePositions() {
+        return PositionCodec.decode(encodedPositions);
+    }
+}
@@ -0,0 +1,160 @@
+package searchengine.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Локальный сайт-заглушка для сквозного замера индексации без выхода в сеть.
+ * Страницы /page/0 .. /page/{pages-1} собираются из статьи корпуса и поровну делятся
+ * на depth уровней: главная ссылается на страницы первого уровня, каждая страница
+ * уровня — на fanOut страниц следующего. Задержка ответа и доля ответов 500 задаются
+ * параметрами, чтобы воспроизводить медленный или нестабильный сайт.
+ */
+final class SyntheticSiteServer implements AutoCloseable {
+
+    private final int pages;
+    private final int fanOut;
+    private final int depth;
+    private final long latencyMs;
+    private final double errorRate;
+    private final String[] paragraphs;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final LongAdder requests = new LongAdder();
+
+    SyntheticSiteServer(int pages, int fanOut, int depth, long latencyMs, double errorRate) throws IOException {
+        this.pages = pages;
+        this.fanOut = fanOut;
+        this.depth = Math.max(1, Math.min(depth, pages));
+        this.latencyMs = latencyMs;
+        this.errorRate = errorRate;
+        this.paragraphs = paragraphs(Corpus.load("ru-article"));
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        executor = Executors.newFixedThreadPool(16);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    String url() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    long requests() {
+        return requests.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.increment();
+        try (exchange) {
+            if (latencyMs > 0) {
+                Thread.sleep(latencyMs);
+            }
+            String path = exchange.getRequestURI().getPath();
+            int number = pageNumber(path);
+            if (number < -1 || number >= pages) {
+                respond(exchange, 404, "<html><body>Not found</body></html>");
+                return;
+            }
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                respond(exchange, 500, "<html><body>Internal error</body></html>");
+                return;
+            }
+            respond(exchange, 200, page(number));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Номер страницы по пути: -1 для главной, -2 для неизвестного пути.
+     */
+    private static int pageNumber(String path) {
+        if (path.isEmpty() || path.equals("/")) {
+            return -1;
+        }
+        if (!path.startsWith("/page/")) {
+            return -2;
+        }
+        try {
+            return Integer.parseInt(path.substring("/page/".length()));
+        } catch (NumberFormatException e) {
+            return -2;
+        }
+    }
+
+    private String page(int number) {
+        StringBuilder html = new StringBuilder(16 * 1024);
+        html.append("<!DOCTYPE html><html lang=\"ru\"><head><meta charset=\"utf-8\"><title>")
+                .append(number < 0 ? "Главная" : "Страница " + number)
+                .append("</title></head><body><nav>");
+        // Главная — нулевой уровень из одной страницы
+        int level = number < 0 ? 0 : level(number);
+        if (level < depth) {
+            int index = number < 0 ? 0 : number - levelStart(level);
+            int start = levelStart(level + 1);
+            int size = levelStart(level + 2) - start;
+            for (int k = 0; k < Math.min(fanOut, size); k++) {
+                int i = start + (index * fanOut + k) % size;
+                html.append("<a href=\"/page/").append(i).append("\">Страница ").append(i).append("</a> ");
+            }
+        }
+        html.append("</nav><article>");
+        // Порядок и число абзацев зависят от номера, чтобы позиции и частоты лемм отличались
+        int seed = number + 1;
+        int count = paragraphs.length - seed % 3;
+        for (int i = 0; i < count; i++) {
+            html.append(paragraphs[(i * 7 + seed) % paragraphs.length]);
+        }
+        html.append("</article></body></html>");
+        return html.toString();
+    }
+
+    // Первая страница уровня level (1..depth); уровни после depth пустые
+    private int levelStart(int level) {
+        return (int) ((long) pages * (Math.min(level, depth + 1) - 1) / depth);
+    }
+
+    private int level(int number) {
+        int level = 1;
+        while (number >= levelStart(level + 1)) {
+            level++;
+        }
+        return level;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String[] paragraphs(String html) {
+        String[] parts = html.split("(?=<p>)");
+        return Arrays.stream(parts)
+                .filter(part -> part.startsWith("<p>"))
+                .map(part -> part.substring(0, part.indexOf("</p>") + "</p>".length()))
+                .toArray(String[]::new);
+    }
+}
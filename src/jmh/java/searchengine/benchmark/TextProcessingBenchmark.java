@@ -0,0 +1,48 @@
+package searchengine.benchmark;
+
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.*;
+import searchengine.services.TextProcessingServiceImpl;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextProcessingBenchmark {
+
+    @Param({"ru-article", "en-article"})
+    private String corpus;
+
+    // 1 копия ~ 8 КБ HTML, 100 копий ~ 500 КБ
+    @Param({"1", "10", "100"})
+    private int copies;
+
+    private TextProcessingServiceImpl textProcessingService;
+    private String text;
+
+    @Setup
+    public void setUp() throws IOException {
+        textProcessingService = new TextProcessingServiceImpl();
+        text = textProcessingService.extractText(Jsoup.parse(Corpus.scaled(corpus, copies)));
+    }
+
+    @Benchmark
+    public Object collectLemmas() {
+        return textProcessingService.collectLemmas(text);
+    }
+
+    @Benchmark
+    public Object getLemmaSet() {
+        return textProcessingService.getLemmaSet(text);
+    }
+
+    @Benchmark
+    public Object collectOccurrences() {
+        return textProcessingService.collectOccurrences(text);
+    }
+}
@@ -0,0 +1,55 @@
+package searchengine.benchmark;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import searchengine.services.UrlNormalizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UrlNormalizationBenchmark {
+
+    private static final String SITE_URL = "https://www.lenta.ru";
+
+    private final List<String> hrefs = new ArrayList<>();
+    private final List<String> absoluteUrls = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        for (String corpus : new String[]{"ru-article", "en-article"}) {
+            for (Element link : Jsoup.parse(Corpus.load(corpus)).select("a[href]")) {
+                hrefs.add(link.attr("href"));
+            }
+        }
+        hrefs.add(SITE_URL + "/news/2024/03/14/climate/?utm_source=main");
+        for (String href : hrefs) {
+            String url = UrlNormalizer.absoluteUrl(SITE_URL, href);
+            if (url != null) {
+                absoluteUrls.add(url);
+            }
+        }
+    }
+
+    @Benchmark
+    public void absoluteUrl(Blackhole blackhole) {
+        for (String href : hrefs) {
+            blackhole.consume(UrlNormalizer.absoluteUrl(SITE_URL, href));
+        }
+    }
+
+    @Benchmark
+    public void relativePath(Blackhole blackhole) {
+        for (String url : absoluteUrls) {
+            blackhole.consume(UrlNormalizer.relativePath(SITE_URL, url));
+        }
+    }
+}
@@ -1,12 +1,21 @@
 package searchengine.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import searchengine.model.ContentCodec;
 import searchengine.services.TextProcessingService;
 import searchengine.services.TextProcessingServiceImpl;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class AppConfig {
@@ -16,6 +25,29 @@ public class AppConfig {
         return new ForkJoinPool();
     }
 
+    /**
+     * Пул для параллельного поиска по сайтам. Очередь ограничена: при её переполнении
+     * задача отклоняется, и сайт не попадает в выдачу, как не уложившийся в срок.
+     * Выполнение в потоке запроса (CallerRunsPolicy) обошло бы срок поиска.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService searchExecutor(@Value("${app.searchThreads:4}") int threads,
+                                          MeterRegistry meterRegistry) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 16),
+                new ThreadPoolExecutor.AbortPolicy());
+        new ExecutorServiceMetrics(executor, "search", List.of()).bindTo(meterRegistry);
+        return executor;
+    }
+
+    /**
+     * Настройка проверяется отдельным бином: если конвертер не удаётся создать через Spring,
+     * Hibernate молча создаёт его сам с кодеком по умолчанию.
+     */
+    @Bean
+    public ContentCodec contentCodec(@Value("${app.contentCodec:deflate}") String codec) {
+        return ContentCodec.fromSetting(codec);
+    }
 
     @Bean
     public TextProcessingService textProcessingService() throws IOException {
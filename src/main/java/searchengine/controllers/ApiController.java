@@ -3,22 +3,52 @@ package searchengine.controllers;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import searchengine.dto.statistics.StatisticsResponse;
+import searchengine.services.SearchException;
+import searchengine.services.SearchService;
 import searchengine.services.StatisticsService;
+import searchengine.services.SuggestionService;
+
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api")
 public class ApiController {
 
     private final StatisticsService statisticsService;
+    private final SearchService searchService;
+    private final SuggestionService suggestionService;
 
-    public ApiController(StatisticsService statisticsService) {
+    public ApiController(StatisticsService statisticsService,
+                         SearchService searchService,
+                         SuggestionService suggestionService) {
         this.statisticsService = statisticsService;
+        this.searchService = searchService;
+        this.suggestionService = suggestionService;
     }
 
     @GetMapping("/statistics")
     public ResponseEntity<StatisticsResponse> statistics() {
         return ResponseEntity.ok(statisticsService.getStatistics());
     }
+
+    @GetMapping("/search")
+    public ResponseEntity<Object> search(@RequestParam(value = "query", required = false) String query,
+                                         @RequestParam(value = "site", required = false) String site,
+                                         @RequestParam(value = "offset", defaultValue = "0") int offset,
+                                         @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        try {
+            return ResponseEntity.ok(searchService.search(query, site, offset, limit));
+        } catch (SearchException e) {
+            return ResponseEntity.badRequest().body(Map.of("result", false, "error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/suggest")
+    public ResponseEntity<Map<String, Object>> suggest(@RequestParam(value = "query", defaultValue = "") String query,
+                                                       @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        return ResponseEntity.ok(Map.of("result", true, "suggestions", suggestionService.suggest(query, limit)));
+    }
 }
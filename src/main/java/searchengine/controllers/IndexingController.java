@@ -1,9 +1,14 @@
 package searchengine.controllers;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import searchengine.services.IndexingEventPublisher;
 
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -11,10 +16,13 @@ import java.util.Map;
 public class IndexingController {
 
     private final IndexingControllerHelper indexingControllerHelper;
+    private final IndexingEventPublisher indexingEventPublisher;
 
     @Autowired
-    public IndexingController(IndexingControllerHelper indexingControllerHelper) {
+    public IndexingController(IndexingControllerHelper indexingControllerHelper,
+                              IndexingEventPublisher indexingEventPublisher) {
         this.indexingControllerHelper = indexingControllerHelper;
+        this.indexingEventPublisher = indexingEventPublisher;
     }
 
     @GetMapping("/startIndexing")
@@ -31,4 +39,25 @@ public class IndexingController {
     public ResponseEntity<Map<String, Object>> indexPage(@RequestParam("url") String url) {
         return ResponseEntity.ok(indexingControllerHelper.indexPage(url));
     }
+
+    /**
+     * Ставит пачку URL в фоновую переиндексацию и сразу возвращает id задания.
+     */
+    @PostMapping("/indexPages")
+    public ResponseEntity<Map<String, Object>> indexPages(@RequestBody List<String> urls) {
+        return ResponseEntity.ok(indexingControllerHelper.indexPages(urls));
+    }
+
+    @GetMapping("/indexPages/{jobId}")
+    public ResponseEntity<Map<String, Object>> indexPagesStatus(@PathVariable String jobId) {
+        return indexingControllerHelper.indexPagesStatus(jobId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("result", false, "error", "Задание не найдено")));
+    }
+
+    @GetMapping(value = "/indexing/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter indexingEvents() {
+        return indexingEventPublisher.subscribe();
+    }
 }
@@ -1,19 +1,24 @@
 package searchengine.controllers;
 
 import org.springframework.stereotype.Component;
+import searchengine.services.IndexPageQueue;
 import searchengine.services.IndexingException;
 import searchengine.services.IndexingService;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @Component
 public class IndexingControllerHelper {
 
     private final IndexingService indexingService;
+    private final IndexPageQueue indexPageQueue;
 
-    public IndexingControllerHelper(IndexingService indexingService) {
+    public IndexingControllerHelper(IndexingService indexingService, IndexPageQueue indexPageQueue) {
         this.indexingService = indexingService;
+        this.indexPageQueue = indexPageQueue;
     }
 
     public Map<String, Object> startIndexing() {
@@ -51,4 +56,25 @@ public class IndexingControllerHelper {
         }
         return response;
     }
+
+    public Map<String, Object> indexPages(List<String> urls) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            response.put("jobId", indexPageQueue.submit(urls));
+            response.put("result", true);
+        } catch (IndexingException e) {
+            response.put("result", false);
+            response.put("error", e.getMessage());
+        }
+        return response;
+    }
+
+    public Optional<Map<String, Object>> indexPagesStatus(String jobId) {
+        return indexPageQueue.getStatus(jobId).map(status -> {
+            Map<String, Object> response = new HashMap<>();
+            response.put("result", true);
+            response.put("job", status);
+            return response;
+        });
+    }
 }
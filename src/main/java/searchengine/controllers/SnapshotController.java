@@ -0,0 +1,71 @@
+package searchengine.controllers;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import searchengine.services.IndexSnapshotService;
+import searchengine.services.IndexingException;
+
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/snapshot")
+public class SnapshotController {
+
+    private final IndexSnapshotService indexSnapshotService;
+
+    public SnapshotController(IndexSnapshotService indexSnapshotService) {
+        this.indexSnapshotService = indexSnapshotService;
+    }
+
+    @PostMapping("/export")
+    public ResponseEntity<Map<String, Object>> exportSnapshot() {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            response.putAll(indexSnapshotService.exportSnapshot().toMap());
+            response.put("result", true);
+        } catch (IndexingException e) {
+            response.put("result", false);
+            response.put("error", e.getMessage());
+        }
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Последний выгруженный снимок: новый узел скачивает его в свой app.snapshotPath.
+     */
+    @GetMapping
+    public ResponseEntity<Object> downloadSnapshot() {
+        if (!Files.isRegularFile(indexSnapshotService.getSnapshotPath())) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("result", false, "error", "Снимок индекса ещё не выгружен"));
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"index.snapshot\"")
+                .body(new FileSystemResource(indexSnapshotService.getSnapshotPath()));
+    }
+
+    @PostMapping("/import")
+    public ResponseEntity<Map<String, Object>> importSnapshot(
+            @RequestParam(value = "replace", defaultValue = "false") boolean replace) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            response.putAll(indexSnapshotService.importSnapshot(replace).toMap());
+            response.put("result", true);
+        } catch (IndexingException e) {
+            response.put("result", false);
+            response.put("error", e.getMessage());
+        }
+        return ResponseEntity.ok(response);
+    }
+}
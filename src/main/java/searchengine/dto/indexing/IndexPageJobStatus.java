@@ -0,0 +1,15 @@
+package searchengine.dto.indexing;
+
+import lombok.Data;
+
+import java.util.Map;
+
+@Data
+public class IndexPageJobStatus {
+    private String id;
+    private String status;
+    private int total;
+    private int completed;
+    private int failed;
+    private Map<String, String> errors;
+}
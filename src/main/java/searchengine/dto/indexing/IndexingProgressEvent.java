@@ -0,0 +1,11 @@
+package searchengine.dto.indexing;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class IndexingProgressEvent {
+    private long timestamp;
+    private List<SiteProgressItem> sites;
+}
@@ -0,0 +1,14 @@
+package searchengine.dto.indexing;
+
+import lombok.Data;
+
+@Data
+public class SiteProgressItem {
+    private String url;
+    private String name;
+    private String status;
+    private long pagesFetched;
+    private double pagesPerSecond;
+    private int queueDepth;
+    private long errors;
+}
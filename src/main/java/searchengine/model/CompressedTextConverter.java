@@ -0,0 +1,108 @@
+package searchengine.model;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Хранит строку в BLOB сжатой. Первый байт — кодек, которым записано значение,
+ * поэтому смена app.contentCodec не требует перезаписи уже сохранённых страниц.
+ * Значения без известного заголовка читаются как несжатый UTF-8 — так читаются
+ * строки, оставшиеся от столбца MEDIUMTEXT.
+ * <p>
+ * Hibernate получает конвертер через контейнер бинов Spring, поэтому кодек внедряется
+ * бином {@link ContentCodec}; без Spring используется deflate.
+ */
+@Converter
+public class CompressedTextConverter implements AttributeConverter<String, byte[]> {
+
+    private static final byte RAW = 0;
+    private static final byte DEFLATE = 1;
+
+    private ContentCodec codec = ContentCodec.DEFLATE;
+
+    @Autowired
+    void setCodec(ContentCodec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public byte[] convertToDatabaseColumn(String value) {
+        if (value == null) {
+            return null;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return codec == ContentCodec.NONE ? withHeader(RAW, bytes) : deflate(bytes);
+    }
+
+    @Override
+    public String convertToEntityAttribute(byte[] column) {
+        if (column == null) {
+            return null;
+        }
+        if (column.length == 0) {
+            return "";
+        }
+        switch (column[0]) {
+            case RAW:
+                return new String(column, 1, column.length - 1, StandardCharsets.UTF_8);
+            case DEFLATE:
+                return inflate(column);
+            default:
+                return new String(column, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static byte[] deflate(byte[] bytes) {
+        // BEST_SPEED: HTML сжимается в 4–6 раз и на высоких уровнях выигрыш невелик
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 16);
+            out.write(DEFLATE);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static String inflate(byte[] column) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(column, 1, column.length - 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(column.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Сжатое содержимое страницы обрезано");
+                }
+                out.write(buffer, 0, length);
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Повреждено сжатое содержимое страницы", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] withHeader(byte header, byte[] bytes) {
+        byte[] column = new byte[bytes.length + 1];
+        column[0] = header;
+        System.arraycopy(bytes, 0, column, 1, bytes.length);
+        return column;
+    }
+}
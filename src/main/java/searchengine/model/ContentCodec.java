@@ -0,0 +1,29 @@
+package searchengine.model;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Кодек, которым {@link CompressedTextConverter} записывает новые значения (app.contentCodec).
+ */
+public enum ContentCodec {
+
+    DEFLATE("deflate"),
+    NONE("none");
+
+    private final String setting;
+
+    ContentCodec(String setting) {
+        this.setting = setting;
+    }
+
+    public static ContentCodec fromSetting(String value) {
+        for (ContentCodec codec : values()) {
+            if (codec.setting.equals(value)) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестный app.contentCodec: " + value + ", допустимые значения: "
+                + Arrays.stream(values()).map(codec -> codec.setting).collect(Collectors.joining(", ")));
+    }
+}
@@ -0,0 +1,230 @@
+package searchengine.model;
+
+import org.jsoup.Connection;
+import org.jsoup.nodes.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import searchengine.services.BatchPageWriter;
+import searchengine.services.CrawlRateController;
+import searchengine.services.IndexingException;
+import searchengine.services.IndexingMetrics;
+import searchengine.services.PageService;
+import searchengine.services.PreparedPage;
+import searchengine.services.SkippedContentException;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Конвейер обработки страниц одного сайта. Загрузка и разбор с лемматизацией выполняются
+ * в отдельных пулах, запись — общим для всех сайтов {@link BatchPageWriter}; стадии связаны
+ * ограниченными очередями. Если следующая стадия не успевает, постановка в её очередь
+ * блокирует предыдущую: медленная БД притормаживает разбор и загрузку, а не копит
+ * разобранные страницы в памяти.
+ */
+class CrawlPipeline implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(CrawlPipeline.class);
+    private static final int OVERLOAD_RETRIES = 3;
+
+    /**
+     * Вместо отказа ждёт места в очереди пула — так и передаётся обратное давление.
+     */
+    private static final RejectedExecutionHandler WAIT_FOR_SPACE = (task, executor) -> {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Конвейер остановлен");
+        }
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Ожидание очереди прервано", e);
+        }
+    };
+
+    private final SiteCrawler crawler;
+    private final PageService pageService;
+    private final BatchPageWriter writer;
+    private final IndexingMetrics indexingMetrics;
+    private final Site site;
+
+    private final ThreadPoolExecutor fetchers;
+    private final ThreadPoolExecutor parsers;
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicReference<IndexingException> failure = new AtomicReference<>();
+
+    CrawlPipeline(SiteCrawler crawler, PageService pageService, BatchPageWriter writer,
+                  IndexingMetrics indexingMetrics, Site site, int fetchThreads, int parseThreads, int queueSize) {
+        this.crawler = crawler;
+        this.pageService = pageService;
+        this.writer = writer;
+        this.indexingMetrics = indexingMetrics;
+        this.site = site;
+        this.fetchers = stage("fetch", fetchThreads, queueSize);
+        this.parsers = stage("parse", parseThreads, queueSize);
+    }
+
+    /**
+     * Ставит страницу в очередь загрузки; блокируется, пока в очереди нет места.
+     */
+    void submit(String url) {
+        pending.incrementAndGet();
+        execute(fetchers, () -> fetch(url), url);
+    }
+
+    /**
+     * Ставит уже загруженную страницу сразу в очередь разбора.
+     */
+    void submit(String path, Document document) {
+        pending.incrementAndGet();
+        execute(parsers, () -> prepare(path, 200, document), path);
+    }
+
+    /**
+     * Записывает пропущенный адрес с кодом причины, не загружая его. Так повторный обход
+     * не находит его среди новых ссылок снова.
+     */
+    void skipped(String url, SkippedContentException reason) {
+        logger.debug("Пропущено: {}", reason.getMessage());
+        pending.incrementAndGet();
+        execute(parsers, () -> prepare(url, reason.getCode(), Document.createShell("")), url);
+    }
+
+    /**
+     * Страницы, поставленные в конвейер и ещё не записанные.
+     */
+    int pending() {
+        return pending.get();
+    }
+
+    /**
+     * Ждёт, пока все поставленные страницы пройдут конвейер, и пробрасывает первую ошибку.
+     */
+    void awaitCompletion() throws IndexingException, InterruptedException {
+        synchronized (pending) {
+            while (pending.get() > 0) {
+                pending.wait();
+            }
+        }
+        IndexingException error = failure.get();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    @Override
+    public void close() {
+        fetchers.shutdownNow();
+        parsers.shutdownNow();
+    }
+
+    private void fetch(String url) {
+        if (cancelled()) {
+            done();
+            return;
+        }
+        try {
+            Connection.Response response = fetchWithRetry(url);
+            execute(parsers, () -> parse(url, response), url);
+        } catch (SkippedContentException e) {
+            logger.debug("Пропущено: {}", e.getMessage());
+            prepare(url, e.getCode(), Document.createShell(""));
+        } catch (Exception e) {
+            fail("Ошибка при обходе страницы " + url + " на сайте " + site.getUrl(), e);
+        }
+    }
+
+    // Ответ перегруженного хоста не роняет обход: CrawlRateController уже снизил предел,
+    // и повтор уйдёт при меньшем числе одновременных запросов
+    private Connection.Response fetchWithRetry(String url) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return crawler.fetchPage(site, url);
+            } catch (IOException e) {
+                if (attempt > OVERLOAD_RETRIES || !CrawlRateController.isOverload(e) || cancelled()) {
+                    throw e;
+                }
+                logger.debug("Повтор загрузки {} после перегрузки хоста: {}", url, e.getMessage());
+                indexingMetrics.fetchRetry(url, CrawlRateController.failureCause(e));
+            }
+        }
+    }
+
+    private void parse(String url, Connection.Response response) {
+        if (cancelled()) {
+            done();
+            return;
+        }
+        try {
+            prepare(url, 200, crawler.parse(response));
+        } catch (Exception e) {
+            fail("Ошибка при обработке страницы " + url + " на сайте " + site.getUrl(), e);
+        }
+    }
+
+    private void prepare(String path, int code, Document document) {
+        if (cancelled()) {
+            done();
+            return;
+        }
+        try {
+            PreparedPage prepared = pageService.preparePage(site, path, code, document);
+            writer.submit(prepared).whenComplete((result, error) -> {
+                if (error == null) {
+                    logger.info("Страница успешно обработана: {}{}", site.getUrl(), prepared.getPath());
+                    done();
+                } else {
+                    fail("Ошибка при обработке страницы " + path + " на сайте " + site.getUrl(), error);
+                }
+            });
+        } catch (Exception e) {
+            fail("Ошибка при обработке страницы " + path + " на сайте " + site.getUrl(), e);
+        }
+    }
+
+    private void execute(ThreadPoolExecutor stage, Runnable task, String page) {
+        try {
+            stage.execute(task);
+        } catch (RejectedExecutionException e) {
+            fail("Страница " + page + " не поставлена в очередь", e);
+        }
+    }
+
+    private boolean cancelled() {
+        return failure.get() != null || crawler.isStopped(site);
+    }
+
+    private void fail(String message, Throwable e) {
+        logger.error(message, e);
+        failure.compareAndSet(null, new IndexingException(message, e));
+        done();
+    }
+
+    private void done() {
+        if (pending.decrementAndGet() == 0) {
+            synchronized (pending) {
+                pending.notifyAll();
+            }
+        }
+    }
+
+    private ThreadPoolExecutor stage(String name, int threads, int queueSize) {
+        AtomicInteger number = new AtomicInteger();
+        String host = site.getUrl().replaceFirst("^https?://", "");
+        ThreadFactory threadFactory = task -> {
+            Thread thread = new Thread(task, "crawl-" + name + "-" + host + "-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), threadFactory, WAIT_FOR_SPACE);
+    }
+}
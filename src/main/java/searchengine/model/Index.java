@@ -15,15 +15,27 @@ public class Index {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long  id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "page_id", referencedColumnName = "id", nullable = false)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     private Page page;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "lemma_id", referencedColumnName = "id", nullable = false)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     private Lemma lemma;
 
     @Column(name = "rank_value")
     private float rankValue;
 
+    // Смещение первого вхождения леммы в Page.text
+    @Column(name = "first_offset", nullable = false)
+    private int firstOffset;
+
+    // Позиции слов с леммой на странице, см. PositionCodec
+    @Column(name = "positions", columnDefinition = "BLOB")
+    private byte[] positions;
+
 }
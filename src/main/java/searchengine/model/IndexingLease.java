@@ -0,0 +1,39 @@
+package searchengine.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Аренда работы в общей БД, через которую несколько узлов делят сайты между собой.
+ * Строка без владельца ждёт, пока её заберёт какой-нибудь узел; владелец продлевает
+ * аренду, а просроченную может забрать другой узел.
+ */
+@Entity
+@Table(name = "indexing_lease")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IndexingLease {
+
+    // Вид работы и её объект, например "site:https://www.lenta.ru"
+    @Id
+    @Column(name = "name", length = 255)
+    private String name;
+
+    @Column(name = "owner", length = 255)
+    private String owner;
+
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
+
+    // Остановка по всему кластеру: владелец не сможет продлить аренду и прервёт работу
+    @Column(name = "stop_requested", nullable = false)
+    private boolean stopRequested;
+
+    public boolean isClaimable(LocalDateTime now) {
+        return !stopRequested && (owner == null || expiresAt == null || expiresAt.isBefore(now));
+    }
+
+}
@@ -15,8 +15,10 @@ public class Lemma {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "site_id", nullable = false)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     private Site site;
 
     @Column(name = "lemma", nullable = false, length = 255)
@@ -3,7 +3,6 @@ package searchengine.model;
 import lombok.*;
 
 import javax.persistence.*;
-import java.util.List;
 
 @Entity
 @Table(name = "page")
@@ -16,8 +15,10 @@ public class Page {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "site_id", nullable = false)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     private Site site;
 
     @Column(name = "path", nullable = false, columnDefinition = "TEXT")
@@ -26,7 +27,11 @@ public class Page {
     @Column(name = "code", nullable = false)
     private int code;
 
-    @Column(name = "content", nullable = false, columnDefinition = "MEDIUMTEXT")
-    private String content;
+    @Column(name = "title", columnDefinition = "TEXT")
+    private String title;
+
+    // SimHash текста, см. NearDuplicateIndex; null у коротких страниц и страниц с ошибкой
+    @Column(name = "simhash")
+    private Long simhash;
 
 }
@@ -0,0 +1,37 @@
+package searchengine.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+
+/**
+ * Адрес, по которому сайт отдаёт почти ту же страницу, что и canonical: версия для печати,
+ * ссылка с метками, страница комментариев. Такие адреса не индексируются повторно.
+ */
+@Entity
+@Table(name = "page_alias")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PageAlias {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "site_id", nullable = false)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private Site site;
+
+    @Column(name = "path", nullable = false, columnDefinition = "TEXT")
+    private String path;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "canonical_page_id", nullable = false)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private Page canonical;
+
+}
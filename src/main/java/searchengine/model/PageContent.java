@@ -0,0 +1,38 @@
+package searchengine.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+
+/**
+ * Тяжёлые столбцы страницы в отдельной таблице: сжатый HTML и текст без разметки.
+ * Page ссылок на неё не держит, поэтому загрузка страницы их не читает.
+ */
+@Entity
+@Table(name = "page_content")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PageContent {
+
+    @Id
+    @Column(name = "page_id")
+    private Long pageId;
+
+    @MapsId
+    @OneToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "page_id")
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private Page page;
+
+    // HTML страницы в сжатом виде, см. CompressedTextConverter
+    @Convert(converter = CompressedTextConverter.class)
+    @Column(name = "content", nullable = false, columnDefinition = "LONGBLOB")
+    private String content;
+
+    // Текст страницы без разметки, по нему считаются смещения лемм в search_index
+    @Column(name = "text", columnDefinition = "MEDIUMTEXT")
+    private String text;
+
+}
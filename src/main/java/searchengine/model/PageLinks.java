@@ -0,0 +1,33 @@
+package searchengine.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+
+/**
+ * Исходящие ссылки страницы на другие страницы того же сайта: одна строка на страницу,
+ * пути через перевод строки в сжатом виде. По ним строится граф ссылок для PageRankService.
+ */
+@Entity
+@Table(name = "page_links")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PageLinks {
+
+    @Id
+    @Column(name = "page_id")
+    private Long pageId;
+
+    @MapsId
+    @OneToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "page_id")
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private Page page;
+
+    @Convert(converter = CompressedTextConverter.class)
+    @Column(name = "targets", nullable = false, columnDefinition = "MEDIUMBLOB")
+    private String targets;
+
+}
@@ -0,0 +1,58 @@
+package searchengine.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * История загрузок страницы для повторного обхода: хеш текста, валидаторы HTTP-кэша
+ * и сглаженные счётчики, по которым оценивается частота изменений.
+ */
+@Entity
+@Table(name = "page_refresh", indexes = @javax.persistence.Index(name = "idx_page_refresh_next_fetch",
+        columnList = "next_fetch"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PageRefresh {
+
+    @Id
+    @Column(name = "page_id")
+    private Long pageId;
+
+    @MapsId
+    @OneToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "page_id")
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private Page page;
+
+    @Column(name = "content_hash", nullable = false)
+    private long contentHash;
+
+    // ETag и Last-Modified последнего ответа для условного запроса
+    @Column(name = "etag", length = 255)
+    private String etag;
+
+    @Column(name = "last_modified", length = 64)
+    private String lastModified;
+
+    @Column(name = "last_fetched", nullable = false)
+    private LocalDateTime lastFetched;
+
+    @Column(name = "next_fetch", nullable = false)
+    private LocalDateTime nextFetch;
+
+    // Число загрузок и замеченных изменений с затуханием: старые наблюдения весят меньше
+    @Column(name = "fetches", nullable = false)
+    private double fetches;
+
+    @Column(name = "changes", nullable = false)
+    private double changes;
+
+    // Средний интервал между загрузками, секунды
+    @Column(name = "mean_interval", nullable = false)
+    private double meanInterval;
+
+}
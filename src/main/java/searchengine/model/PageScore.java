@@ -0,0 +1,31 @@
+package searchengine.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+
+/**
+ * Статическая важность страницы по графу ссылок сайта (PageRank), не зависящая от запроса.
+ */
+@Entity
+@Table(name = "page_score")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PageScore {
+
+    @Id
+    @Column(name = "page_id")
+    private Long pageId;
+
+    @MapsId
+    @OneToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "page_id")
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private Page page;
+
+    @Column(name = "score", nullable = false)
+    private float score;
+
+}
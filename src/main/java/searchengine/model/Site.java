@@ -32,4 +32,9 @@ public class Site {
     @Column(name = "name", nullable = false, length = 255)
     private String name;
 
+    // Поколение, которое видят поиск и статистика. Переиндексация строит новое
+    // поколение в отдельной строке с live = false и переключает флаг по готовности
+    @Column(name = "live", nullable = false, columnDefinition = "BOOLEAN DEFAULT TRUE")
+    private boolean live = true;
+
 }
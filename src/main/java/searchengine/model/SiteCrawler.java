@@ -1,5 +1,8 @@
 package searchengine.model;
 
+import io.micrometer.core.instrument.Timer;
+import org.jsoup.Connection;
+import org.jsoup.HttpStatusException;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -10,12 +13,20 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import searchengine.config.SiteConfig;
 import org.springframework.beans.factory.annotation.Value;
+import searchengine.services.BatchPageWriter;
+import searchengine.services.ContentFilter;
+import searchengine.services.CrawlRateController;
+import searchengine.services.CrawlProgress;
 import searchengine.services.IndexingException;
+import searchengine.services.IndexingMetrics;
 import searchengine.services.PageService;
-import searchengine.services.SiteService;
+import searchengine.services.SkippedContentException;
+import searchengine.services.UrlNormalizer;
 
 import java.io.IOException;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.io.InterruptedIOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class SiteCrawler {
@@ -26,119 +37,252 @@ public class SiteCrawler {
     @Value("${app.referer}")
     private String referer;
 
+    @Value("${app.fetchThreads:8}")
+    private int fetchThreads;
+
+    @Value("${app.parseThreads:4}")
+    private int parseThreads;
+
+    @Value("${app.pipelineQueueSize:64}")
+    private int pipelineQueueSize;
+
     private static final Logger logger = LoggerFactory.getLogger(SiteCrawler.class);
 
-    public final AtomicBoolean stopCrawling = new AtomicBoolean(false);
+    // Остановка по сайтам: сайт может прервать и общая остановка, и потеря аренды на нём
+    private final Set<String> activeSites = ConcurrentHashMap.newKeySet();
+    private final Set<String> stoppedSites = ConcurrentHashMap.newKeySet();
 
-    private final SiteService siteService;
     private final PageService pageService;
+    private final BatchPageWriter batchPageWriter;
+    private final CrawlProgress crawlProgress;
+    private final IndexingMetrics indexingMetrics;
+    private final ContentFilter contentFilter;
+    private final CrawlRateController crawlRateController;
 
     @Autowired
-    public SiteCrawler(SiteService siteService, PageService pageService) {
-        this.siteService = siteService;
+    public SiteCrawler(PageService pageService,
+                       BatchPageWriter batchPageWriter,
+                       CrawlProgress crawlProgress,
+                       IndexingMetrics indexingMetrics,
+                       ContentFilter contentFilter,
+                       CrawlRateController crawlRateController) {
         this.pageService = pageService;
+        this.batchPageWriter = batchPageWriter;
+        this.crawlProgress = crawlProgress;
+        this.indexingMetrics = indexingMetrics;
+        this.contentFilter = contentFilter;
+        this.crawlRateController = crawlRateController;
     }
 
-    public void crawlSite(SiteConfig siteConfig) throws IndexingException {
+    /**
+     * Обходит сайт, записывая страницы в переданную строку site.
+     *
+     * @return false, если обход был остановлен до завершения
+     */
+    public boolean crawlSite(Site site, SiteConfig siteConfig) throws IndexingException {
+        stoppedSites.remove(site.getUrl());
+        activeSites.add(site.getUrl());
         try {
-            Site site = siteService.createOrUpdateSite(siteConfig);
-            crawlPages(site, siteConfig.getUrl());
+            crawlProgress.crawlStarted(site);
+            return crawlPages(site, siteConfig.getUrl());
         } catch (Exception e) {
             logger.error("Ошибка при индексации сайта: {}", siteConfig.getUrl(), e);
             throw new IndexingException("Ошибка при индексации сайта: " + siteConfig.getUrl(), e);
         } finally {
-            stopCrawling.set(false);
+            activeSites.remove(site.getUrl());
+            stoppedSites.remove(site.getUrl());
         }
     }
 
-    private void crawlPages(Site site, String siteUrl) throws IndexingException {
-        try {
-            Document document = Jsoup.connect(siteUrl)
-                    .userAgent(userAgent)
-                    .referrer(referer)
-                    .followRedirects(true)
-                    .get();
-
-            processPage(site, siteUrl, "/", document);
+    private boolean crawlPages(Site site, String siteUrl) throws IndexingException {
+        try (CrawlPipeline pipeline = new CrawlPipeline(this, pageService, batchPageWriter, indexingMetrics,
+                site, fetchThreads, parseThreads, pipelineQueueSize)) {
+            // Главная загружается сразу: из неё берутся ссылки для остальных страниц
+            Document document = parse(fetchPage(site, siteUrl));
+            pipeline.submit("/", document);
 
             Elements links = document.select("a[href]");
-            for (Element link : links) {
+            for (int i = 0; i < links.size(); i++) {
+                Element link = links.get(i);
+                crawlProgress.queueDepth(site, links.size() - i + pipeline.pending());
 
-                if (stopCrawling.get()) {
+                if (isStopped(site)) {
                     logger.info("Индексация прервана: {}", siteUrl);
-                    return;
+                    break;
                 }
 
-                String href = link.attr("href");
-                if (!href.startsWith("http")) {
-                    href = siteUrl + href;
+                String href = UrlNormalizer.absoluteUrl(siteUrl, link.attr("href"));
+                if (href == null) {
+                    continue;
                 }
 
-                // Ожидание перед каждым запросом
+                // Файлы по расширению отсеиваются без запроса
                 try {
-                    Thread.sleep(500);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
+                    contentFilter.checkUrl(href);
+                } catch (SkippedContentException e) {
+                    pipeline.skipped(href, e);
+                    continue;
                 }
 
-                crawlPage(site, siteUrl, href);
+                // Темп запросов задаёт CrawlRateController в стадии загрузки,
+                // а заполнение очереди ограничено её размером
+                pipeline.submit(href);
             }
+            crawlProgress.queueDepth(site, pipeline.pending());
+            pipeline.awaitCompletion();
+            crawlProgress.queueDepth(site, 0);
+            return !isStopped(site);
         } catch (IOException e) {
             logger.error("Ошибка при обходе сайта: " + siteUrl, e);
             throw new IndexingException("Ошибка при обходе сайта: " + siteUrl, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IndexingException("Индексация прервана: " + siteUrl, e);
         }
     }
 
-    private void crawlPage(Site site, String siteUrl, String href) throws IndexingException {
-        if (stopCrawling.get()) {
-            logger.info("Индексация прервана: {}", siteUrl);
-            return;
+    public void processPage(Site site, String siteUrl, String path, Document document) throws IndexingException {
+        try {
+            String content = document.html();
+            pageService.indexPageContent(site, path, 200, content);
+            logger.info("Страница успешно обработана: {}{}", site.getUrl(), path);
+        } catch (Exception e) {
+            logger.error("Ошибка при обработке страницы {} на сайте: {}", path, site.getUrl(), e);
+            throw new IndexingException("Ошибка при обработке страницы " + path + " на сайте " + site.getUrl(), e);
         }
+    }
+
+    /**
+     * Загружает и разбирает страницу, отдельно замеряя сетевую часть и разбор HTML.
+     */
+    private Document fetchDocument(String url) throws IOException {
+        return parse(fetchResponse(url));
+    }
 
+    /**
+     * Загрузка для стадии fetch конвейера: тело ответа читается целиком здесь,
+     * чтобы поток разбора не ждал сеть.
+     */
+    Connection.Response fetchPage(Site site, String url) throws IOException {
         try {
-            // Отделяем номер телефона от URL
-            String[] parts = href.split(":");
-            if (parts.length > 1) {
-                href = parts[0] + ":" + parts[1];
-            }
+            Connection.Response response = fetchResponse(url);
+            crawlProgress.pageFetched(site);
+            return response;
+        } catch (SkippedContentException e) {
+            throw e;
+        } catch (IOException e) {
+            crawlProgress.fetchFailed(site);
+            throw e;
+        }
+    }
 
-            Document pageDocument = Jsoup.connect(href)
-                    .userAgent(userAgent)
-                    .referrer(referer)
-                    .get();
+    Document parse(Connection.Response response) throws IOException {
+        Timer.Sample parseSample = Timer.start();
+        try {
+            return response.parse();
+        } finally {
+            parseSample.stop(indexingMetrics.parseTimer());
+        }
+    }
 
-            processPage(site, siteUrl, href, pageDocument);
-        } catch (IOException e) {
-            logger.error("Ошибка при обходе страницы {} на сайте: {}", href, siteUrl, e);
-            throw new IndexingException("Ошибка при обходе страницы " + href + " на сайте " + siteUrl, e);
+    /**
+     * Условная загрузка для повторного обхода: если страница не менялась, сервер
+     * отвечает 304 без тела, и трафик уходит только на заголовки.
+     */
+    public Connection.Response fetchIfModified(String url, String etag, String lastModified) throws IOException {
+        Connection connection = connect(url);
+        if (etag != null) {
+            connection.header("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            connection.header("If-Modified-Since", lastModified);
         }
+        return execute(url, connection);
     }
 
-    public void processPage(Site site, String siteUrl, String path, Document document) throws IndexingException {
+    private Connection.Response fetchResponse(String url) throws IOException {
+        return execute(url, connect(url));
+    }
+
+    private Connection connect(String url) {
+        return Jsoup.connect(url)
+                .userAgent(userAgent)
+                .referrer(referer)
+                .followRedirects(true)
+                // Тип ответа проверяет ContentFilter, а лишний байт сверх предела показывает,
+                // что тело было обрезано
+                .ignoreContentType(true)
+                .maxBodySize(contentFilter.getMaxPageBytes() + 1);
+    }
+
+    private Connection.Response execute(String url, Connection connection) throws IOException {
+        contentFilter.checkUrl(url);
+        CrawlRateController.Permit permit;
         try {
-            String content = document.html();
-            pageService.createOrUpdatePage(site, siteUrl, path, 200, content);
-            logger.info("Страница успешно обработана: {}{}", site.getUrl(), path);
-        } catch (Exception e) {
-            logger.error("Ошибка при обработке страницы {} на сайте: {}", path, site.getUrl(), e);
-            throw new IndexingException("Ошибка при обработке страницы " + path + " на сайте " + site.getUrl(), e);
+            permit = crawlRateController.acquire(url);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Загрузка прервана: " + url);
+        }
+        Timer.Sample sample = Timer.start();
+        Connection.Response response;
+        try {
+            // execute() читает только заголовки: тело неподходящего ответа не загружается
+            response = connection.execute();
+            permit.responded();
+            try {
+                contentFilter.checkHeaders(url, response.contentType(), response.header("Content-Length"));
+            } catch (SkippedContentException e) {
+                response.bodyStream().close();
+                throw e;
+            }
+            response.bufferUp();
+            contentFilter.checkBody(url, response.bodyAsBytes().length);
+            permit.succeeded();
+        } catch (SkippedContentException e) {
+            permit.ignored();
+            sample.stop(indexingMetrics.fetchTimer(url, "skipped"));
+            throw e;
+        } catch (HttpStatusException e) {
+            permit.failed(e);
+            sample.stop(indexingMetrics.fetchTimer(url, "http_error"));
+            indexingMetrics.httpStatus(url, e.getStatusCode());
+            throw e;
+        } catch (IOException e) {
+            permit.failed(e);
+            sample.stop(indexingMetrics.fetchTimer(url, "io_error"));
+            throw e;
+        } finally {
+            permit.ignored();
         }
+        sample.stop(indexingMetrics.fetchTimer(url, "success"));
+        indexingMetrics.httpStatus(url, response.statusCode());
+        return response;
     }
 
     public void stopCrawling() {
-        this.stopCrawling.set(true);
+        stoppedSites.addAll(activeSites);
+    }
+
+    public void stopCrawling(String siteUrl) {
+        if (activeSites.contains(siteUrl)) {
+            stoppedSites.add(siteUrl);
+        }
+    }
+
+    public boolean isStopped(Site site) {
+        return stoppedSites.contains(site.getUrl());
     }
 
     public String fetchHtmlContent(String url) throws IndexingException {
         try {
             // Получаем HTML-код страницы с помощью Jsoup
-            Document document = Jsoup.connect(url)
-                    .userAgent(userAgent)
-                    .referrer(referer)
-                    .get();
+            Document document = fetchDocument(url);
 
             // Возвращаем HTML-код страницы в виде строки
             return document.html();
+        } catch (SkippedContentException e) {
+            throw new IndexingException(e.getMessage(), e);
         } catch (IOException e) {
             logger.error("Ошибка при получении HTML-кода страницы: {}", url, e);
             throw new IndexingException("Ошибка при получении HTML-кода страницы: " + url, e);
@@ -0,0 +1,10 @@
+package searchengine.repository;
+
+/**
+ * Путь псевдонима и id страницы, на которую он указывает.
+ */
+public interface AliasRef {
+    String getPath();
+
+    Long getCanonicalId();
+}
@@ -0,0 +1,16 @@
+package searchengine.repository;
+
+/**
+ * Облегчённое представление строки search_index без загрузки Page и Lemma.
+ */
+public interface IndexEntry {
+    Long getPageId();
+
+    Long getLemmaId();
+
+    float getRankValue();
+
+    int getFirstOffset();
+
+    byte[] getPositions();
+}
@@ -0,0 +1,41 @@
+package searchengine.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import searchengine.model.Index;
+import searchengine.model.Lemma;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface IndexRepository extends JpaRepository<Index, Long> {
+
+    @Query("select i.lemma.lemma from Index i where i.page.id = :pageId")
+    List<String> findLemmasByPageId(@Param("pageId") Long pageId);
+
+    @Modifying
+    @Query("delete from Index i where i.page.id = :pageId")
+    void deleteByPageId(@Param("pageId") Long pageId);
+
+    @Modifying
+    @Query("delete from Index i where i.page.id in :pageIds")
+    int deleteByPageIdIn(@Param("pageIds") Collection<Long> pageIds);
+
+    @Query("select i.page.id from Index i where i.lemma = :lemma")
+    List<Long> findPageIdsByLemma(@Param("lemma") Lemma lemma);
+
+    @Query("select i.page.id as pageId, i.lemma.id as lemmaId, i.rankValue as rankValue, " +
+            "i.firstOffset as firstOffset, i.positions as positions from Index i " +
+            "where i.lemma in :lemmas and i.page.id in :pageIds")
+    List<IndexEntry> findEntries(@Param("lemmas") Collection<Lemma> lemmas,
+                                 @Param("pageIds") Collection<Long> pageIds);
+
+    @Query("select i.page.id as pageId, i.lemma.id as lemmaId, i.rankValue as rankValue, " +
+            "i.firstOffset as firstOffset, i.positions as positions from Index i " +
+            "where i.lemma in :lemmas order by i.lemma.id")
+    List<IndexEntry> findEntriesByLemmas(@Param("lemmas") Collection<Lemma> lemmas);
+}
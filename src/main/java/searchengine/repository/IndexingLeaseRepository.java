@@ -0,0 +1,67 @@
+package searchengine.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import searchengine.model.IndexingLease;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface IndexingLeaseRepository extends JpaRepository<IndexingLease, String> {
+
+    /**
+     * Забирает свободную, просроченную или свою аренду. Проверка и запись идут одним
+     * UPDATE, поэтому из нескольких узлов аренду получит только один.
+     */
+    @Modifying
+    @Query("update IndexingLease l set l.owner = :owner, l.expiresAt = :expires " +
+            "where l.name = :name and l.stopRequested = false " +
+            "and (l.owner is null or l.owner = :owner or l.expiresAt is null or l.expiresAt < :now)")
+    int claim(@Param("name") String name, @Param("owner") String owner,
+              @Param("now") LocalDateTime now, @Param("expires") LocalDateTime expires);
+
+    @Modifying
+    @Query(value = "insert into indexing_lease (name, owner, expires_at, stop_requested) " +
+            "values (:name, :owner, :expires, false)", nativeQuery = true)
+    int insert(@Param("name") String name, @Param("owner") String owner, @Param("expires") LocalDateTime expires);
+
+    @Modifying
+    @Query("update IndexingLease l set l.expiresAt = :expires " +
+            "where l.name = :name and l.owner = :owner and l.stopRequested = false")
+    int renew(@Param("name") String name, @Param("owner") String owner, @Param("expires") LocalDateTime expires);
+
+    @Modifying
+    @Query("delete from IndexingLease l where l.name = :name and l.owner = :owner")
+    int release(@Param("name") String name, @Param("owner") String owner);
+
+    @Modifying
+    @Query("update IndexingLease l set l.expiresAt = :now where l.owner = :owner")
+    int expireOwnedBy(@Param("owner") String owner, @Param("now") LocalDateTime now);
+
+    List<IndexingLease> findByNameStartingWithOrderByName(String prefix);
+
+    @Query("select count(l) from IndexingLease l where l.name like concat(:prefix, '%') " +
+            "and l.owner is not null and l.expiresAt >= :now")
+    long countHeld(@Param("prefix") String prefix, @Param("now") LocalDateTime now);
+
+    // Ждущие строки тоже считаются: их заберут узлы, у которых есть место
+    @Query("select count(l) from IndexingLease l where l.name like concat(:prefix, '%') " +
+            "and ((l.owner is null and l.stopRequested = false) or l.expiresAt >= :now)")
+    long countActive(@Param("prefix") String prefix, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("delete from IndexingLease l where l.name like concat(:prefix, '%')")
+    int deleteByPrefix(@Param("prefix") String prefix);
+
+    @Modifying
+    @Query("update IndexingLease l set l.stopRequested = true where l.name like concat(:prefix, '%')")
+    int requestStop(@Param("prefix") String prefix);
+
+    @Modifying
+    @Query("delete from IndexingLease l where l.name like concat(:prefix, '%') and l.owner is null")
+    int deleteUnclaimed(@Param("prefix") String prefix);
+}
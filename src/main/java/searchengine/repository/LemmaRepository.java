@@ -1,11 +1,31 @@
 package searchengine.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import searchengine.model.Lemma;
+import searchengine.model.Site;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface LemmaRepository extends JpaRepository<Lemma, Long> {
     Optional<Lemma> findByLemma(String lemma);
 
+    Optional<Lemma> findBySiteAndLemma(Site site, String lemma);
+
+    List<Lemma> findBySiteAndLemmaIn(Site site, Collection<String> lemmas);
+
+    long countBySite(Site site);
+
+    List<Lemma> findBySiteOrderById(Site site, Pageable pageable);
+
+    List<Lemma> findBySiteAndIdGreaterThanOrderById(Site site, Long after, Pageable pageable);
+
+    // Только действующие поколения: строящиеся, неудачные и ждущие удаления не учитываются
+    @Query("select l.lemma as lemma, sum(l.frequency) as weight from Lemma l " +
+            "where l.site.live = true group by l.lemma")
+    List<LemmaWeight> findLemmaWeights();
+
 }
@@ -0,0 +1,10 @@
+package searchengine.repository;
+
+/**
+ * Лемма и её суммарная частота по всем сайтам.
+ */
+public interface LemmaWeight {
+    String getLemma();
+
+    long getWeight();
+}
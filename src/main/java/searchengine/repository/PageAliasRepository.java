@@ -0,0 +1,35 @@
+package searchengine.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import searchengine.model.PageAlias;
+import searchengine.model.Site;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface PageAliasRepository extends JpaRepository<PageAlias, Long> {
+
+    Optional<PageAlias> findBySiteAndPath(Site site, String path);
+
+    boolean existsBySiteAndPath(Site site, String path);
+
+    long countBySite(Site site);
+
+    @Query("select a.path as path, a.canonical.id as canonicalId from PageAlias a where a.site = :site")
+    List<AliasRef> findRefsBySite(@Param("site") Site site);
+
+    @Modifying
+    @Query("delete from PageAlias a where a.site = :site and a.path = :path")
+    int deleteBySiteAndPath(@Param("site") Site site, @Param("path") String path);
+
+    @Modifying
+    @Query("delete from PageAlias a where a.canonical.id in :pageIds")
+    int deleteByCanonicalIdIn(@Param("pageIds") Collection<Long> pageIds);
+
+}
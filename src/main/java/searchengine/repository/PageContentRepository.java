@@ -0,0 +1,29 @@
+package searchengine.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import searchengine.model.PageContent;
+
+import java.util.Collection;
+
+@Repository
+public interface PageContentRepository extends JpaRepository<PageContent, Long> {
+
+    // Обновление без предварительной загрузки старого HTML и текста
+    @Modifying
+    @Query("update PageContent c set c.content = :content, c.text = :text where c.pageId = :pageId")
+    int updateContent(@Param("pageId") Long pageId, @Param("content") String content, @Param("text") String text);
+
+    @Modifying
+    @Query("delete from PageContent c where c.pageId in :pageIds")
+    int deleteByPageIdIn(@Param("pageIds") Collection<Long> pageIds);
+
+    // Читает из БД только нужное окно текста; from отсчитывается с 1, как в SQL
+    @Query(value = "SELECT SUBSTRING(c.text, :from, :length) FROM page_content c WHERE c.page_id = :id",
+            nativeQuery = true)
+    String findTextFragment(@Param("id") Long id, @Param("from") int from, @Param("length") int length);
+
+}
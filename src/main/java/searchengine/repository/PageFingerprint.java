@@ -0,0 +1,12 @@
+package searchengine.repository;
+
+/**
+ * Отпечаток текста страницы для поиска почти одинаковых страниц сайта.
+ */
+public interface PageFingerprint {
+    Long getId();
+
+    String getPath();
+
+    Long getSimhash();
+}
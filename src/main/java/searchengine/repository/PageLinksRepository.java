@@ -0,0 +1,30 @@
+package searchengine.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import searchengine.model.PageLinks;
+import searchengine.model.Site;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface PageLinksRepository extends JpaRepository<PageLinks, Long> {
+
+    @Modifying
+    @Query("update PageLinks l set l.targets = :targets where l.pageId = :pageId")
+    int updateTargets(@Param("pageId") Long pageId, @Param("targets") String targets);
+
+    // Порции по возрастанию id страницы: следующая начинается после последнего прочитанного
+    @Query("select l from PageLinks l where l.page.site = :site and l.pageId > :after order by l.pageId")
+    List<PageLinks> findBySiteAfter(@Param("site") Site site, @Param("after") Long after, Pageable pageable);
+
+    @Modifying
+    @Query("delete from PageLinks l where l.pageId in :pageIds")
+    int deleteByPageIdIn(@Param("pageIds") Collection<Long> pageIds);
+
+}
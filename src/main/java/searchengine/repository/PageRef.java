@@ -0,0 +1,12 @@
+package searchengine.repository;
+
+/**
+ * Минимум полей страницы, чтобы проверить её наличие и решить, что делать при записи.
+ */
+public interface PageRef {
+    Long getId();
+
+    String getPath();
+
+    int getCode();
+}
@@ -0,0 +1,28 @@
+package searchengine.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import searchengine.model.PageRefresh;
+import searchengine.model.Site;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface PageRefreshRepository extends JpaRepository<PageRefresh, Long> {
+
+    // Самые просроченные страницы сайта; путь нужен для загрузки, поэтому страница подтягивается сразу
+    @Query("select r from PageRefresh r join fetch r.page p " +
+            "where p.site = :site and r.nextFetch <= :now order by r.nextFetch")
+    List<PageRefresh> findDue(@Param("site") Site site, @Param("now") LocalDateTime now, Pageable pageable);
+
+    @Modifying
+    @Query("delete from PageRefresh r where r.pageId in :pageIds")
+    int deleteByPageIdIn(@Param("pageIds") Collection<Long> pageIds);
+
+}
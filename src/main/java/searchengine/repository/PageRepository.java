@@ -1,14 +1,46 @@
 package searchengine.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import searchengine.model.Page;
 import searchengine.model.Site;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface PageRepository extends JpaRepository<Page, Long> {
     Optional<Page> findBySiteAndPath(Site site, String path);
 
+    Optional<PageRef> findRefBySiteAndPath(Site site, String path);
+
+    List<PageRef> findRefsBySite(Site site);
+
+    @Modifying
+    @Query("update Page p set p.code = :code, p.title = :title, p.simhash = :simhash where p.id = :id")
+    int updateFields(@Param("id") Long id, @Param("code") int code, @Param("title") String title,
+                     @Param("simhash") Long simhash);
+
+    @Query("select p.id as id, p.path as path, p.simhash as simhash from Page p " +
+            "where p.site = :site and p.simhash is not null")
+    List<PageFingerprint> findFingerprints(@Param("site") Site site);
+
+    long countBySite(Site site);
+
+    // Для удаления сайта порциями: всегда берётся первая страница, удалённые строки в неё уже не попадут
+    @Query("select p.id from Page p where p.site = :site order by p.id")
+    List<Long> findIdsBySite(@Param("site") Site site, Pageable pageable);
+
+    @Query("select p.id as id, p.site.id as siteId, p.path as path, p.title as title " +
+            "from Page p where p.id in :ids")
+    List<PageSummary> findSummaries(@Param("ids") Collection<Long> ids);
+
+    @Query("select p from Page p where p.site = :site and p.id > :after order by p.id")
+    List<Page> findBySiteAfter(@Param("site") Site site, @Param("after") Long after, Pageable pageable);
+
 }
@@ -0,0 +1,24 @@
+package searchengine.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import searchengine.model.PageScore;
+import searchengine.model.Site;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface PageScoreRepository extends JpaRepository<PageScore, Long> {
+
+    @Query("select s.pageId as pageId, s.score as score from PageScore s where s.page.site = :site")
+    List<ScoreEntry> findScores(@Param("site") Site site);
+
+    @Modifying
+    @Query("delete from PageScore s where s.pageId in :pageIds")
+    int deleteByPageIdIn(@Param("pageIds") Collection<Long> pageIds);
+
+}
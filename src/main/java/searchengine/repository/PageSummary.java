@@ -0,0 +1,14 @@
+package searchengine.repository;
+
+/**
+ * Заголовочные поля страницы для выдачи поиска.
+ */
+public interface PageSummary {
+    Long getId();
+
+    Long getSiteId();
+
+    String getPath();
+
+    String getTitle();
+}
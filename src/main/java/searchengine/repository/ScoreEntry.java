@@ -0,0 +1,10 @@
+package searchengine.repository;
+
+/**
+ * Статическая оценка страницы без загрузки сущности.
+ */
+public interface ScoreEntry {
+    Long getPageId();
+
+    float getScore();
+}
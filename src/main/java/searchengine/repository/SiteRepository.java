@@ -4,10 +4,19 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 import searchengine.model.Site;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface SiteRepository extends JpaRepository<Site, Long> {
 
-    Optional<Site> findByUrl(String url);
+    /**
+     * Действующее поколение сайта. Во время переиндексации у того же URL есть
+     * ещё строка с live = false, в которую идёт обход.
+     */
+    Optional<Site> findFirstByUrlAndLiveTrueOrderByIdDesc(String url);
+
+    List<Site> findByLiveTrue();
+
+    List<Site> findByLiveFalse();
 }
@@ -0,0 +1,181 @@
+package searchengine.services;
+
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Единственный писатель индекса. Подготовленные страницы всех сайтов приходят в общую
+ * ограниченную очередь, а поток записи сохраняет их пакетами: транзакция фиксируется,
+ * когда набралось writeBatchSize страниц или прошло writeBatchMs с первой страницы пакета.
+ * Частоты лемм суммируются по пакету, поэтому строка леммы обновляется один раз на пакет,
+ * и писатели разных сайтов не конкурируют за блокировки.
+ */
+@Service
+public class BatchPageWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchPageWriter.class);
+
+    private final PageService pageService;
+    private final IndexingMetrics indexingMetrics;
+    private final BlockingQueue<PendingPage> queue;
+    private final int batchSize;
+    private final long batchMs;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    public BatchPageWriter(PageService pageService,
+                           IndexingMetrics indexingMetrics,
+                           @Value("${app.writeQueueSize:256}") int queueSize,
+                           @Value("${app.writeBatchSize:50}") int batchSize,
+                           @Value("${app.writeBatchMs:200}") long batchMs) {
+        this.pageService = pageService;
+        this.indexingMetrics = indexingMetrics;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.batchSize = batchSize;
+        this.batchMs = batchMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        thread = new Thread(this::run, "index-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        thread.interrupt();
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * Ставит страницу в очередь записи; блокируется, пока в очереди нет места.
+     * Future завершается после фиксации транзакции с этой страницей или ошибкой,
+     * если писатель остановлен.
+     */
+    public CompletableFuture<Void> submit(PreparedPage page) throws InterruptedException {
+        PendingPage pending = new PendingPage(page);
+        while (running) {
+            if (!queue.offer(pending, 1, TimeUnit.SECONDS)) {
+                continue;
+            }
+            // Писатель мог остановиться после проверки: его последний drainTo страницу уже не заберёт
+            if (!running && queue.remove(pending)) {
+                break;
+            }
+            return pending.future;
+        }
+        return CompletableFuture.failedFuture(stopped());
+    }
+
+    private void run() {
+        List<PendingPage> batch = new ArrayList<>(batchSize);
+        try {
+            while (running) {
+                try {
+                    PendingPage first = queue.poll(1, TimeUnit.SECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchMs);
+                    while (batch.size() < batchSize) {
+                        queue.drainTo(batch, batchSize - batch.size());
+                        long remaining = deadline - System.nanoTime();
+                        if (batch.size() >= batchSize || remaining <= 0) {
+                            break;
+                        }
+                        PendingPage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                    flushSafely(batch);
+                    batch.clear();
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            // После остановки дописываем то, что уже успели поставить в очередь
+            Thread.interrupted();
+            queue.drainTo(batch);
+            if (!batch.isEmpty()) {
+                flushSafely(batch);
+            }
+        } finally {
+            // Сюда же попадаем, если поток писателя упал: ждущие страницы не должны висеть вечно
+            running = false;
+            queue.drainTo(batch);
+            IndexingException error = stopped();
+            batch.forEach(pending -> pending.future.completeExceptionally(error));
+        }
+    }
+
+    // Ошибка пакета, включая Error, завершает его страницы, а не поток писателя
+    private void flushSafely(List<PendingPage> batch) {
+        try {
+            flush(batch);
+        } catch (Throwable e) {
+            logger.error("Пакет из {} страниц не записан", batch.size(), e);
+            batch.forEach(pending -> pending.future.completeExceptionally(e));
+            if (e instanceof VirtualMachineError) {
+                throw e;
+            }
+        }
+    }
+
+    private void flush(List<PendingPage> batch) {
+        List<PreparedPage> pages = new ArrayList<>(batch.size());
+        for (PendingPage pending : batch) {
+            pages.add(pending.page);
+        }
+        Timer.Sample sample = Timer.start();
+        try {
+            pageService.savePreparedPages(pages);
+            batch.forEach(pending -> pending.future.complete(null));
+        } catch (Exception e) {
+            // Ищем страницу, из-за которой откатился пакет: остальные записываем по одной
+            logger.warn("Пакет из {} страниц не записан, записываем по одной", batch.size(), e);
+            for (PendingPage pending : batch) {
+                try {
+                    pageService.savePreparedPage(pending.page);
+                    pending.future.complete(null);
+                } catch (Exception pageError) {
+                    pending.future.completeExceptionally(pageError);
+                }
+            }
+        }
+        sample.stop(indexingMetrics.batchCommitTimer());
+        indexingMetrics.pagesPerBatch().record(batch.size());
+    }
+
+    private static IndexingException stopped() {
+        return new IndexingException("Запись индекса остановлена");
+    }
+
+    private static class PendingPage {
+
+        private final PreparedPage page;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingPage(PreparedPage page) {
+            this.page = page;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package searchengine.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Отсев ресурсов, которые не нужно индексировать: по расширению в адресе ещё до запроса
+ * и по заголовкам Content-Type и Content-Length до чтения тела ответа. Тело без
+ * Content-Length читается не больше app.maxPageBytes.
+ */
+@Component
+public class ContentFilter {
+
+    private final Set<String> skipExtensions = new HashSet<>();
+    private final int maxPageBytes;
+    private final IndexingMetrics indexingMetrics;
+
+    public ContentFilter(@Value("${app.skipExtensions:}") List<String> skipExtensions,
+                         @Value("${app.maxPageBytes:5242880}") int maxPageBytes,
+                         IndexingMetrics indexingMetrics) {
+        for (String extension : skipExtensions) {
+            if (!extension.isBlank()) {
+                this.skipExtensions.add(extension.strip().toLowerCase(Locale.ROOT));
+            }
+        }
+        this.maxPageBytes = maxPageBytes;
+        this.indexingMetrics = indexingMetrics;
+    }
+
+    public int getMaxPageBytes() {
+        return maxPageBytes;
+    }
+
+    public void checkUrl(String url) throws SkippedContentException {
+        String extension = extension(url);
+        if (extension != null && skipExtensions.contains(extension)) {
+            throw skip(SkippedContentException.UNSUPPORTED_TYPE, "extension",
+                    "Файл ." + extension + " не загружается: " + url);
+        }
+    }
+
+    /**
+     * Проверяет ответ до чтения тела. Ответ без Content-Type считается страницей.
+     */
+    public void checkHeaders(String url, String contentType, String contentLength) throws SkippedContentException {
+        if (contentType != null && !isHtml(contentType)) {
+            throw skip(SkippedContentException.UNSUPPORTED_TYPE, "content_type",
+                    "Ответ " + contentType + " не является HTML-страницей: " + url);
+        }
+        if (contentLength != null) {
+            try {
+                long length = Long.parseLong(contentLength.strip());
+                if (length > maxPageBytes) {
+                    throw tooLarge(url, " (" + length + ")");
+                }
+            } catch (NumberFormatException e) {
+                // Некорректный заголовок: размер проверится по телу
+            }
+        }
+    }
+
+    /**
+     * Проверяет тело, прочитанное с ограничением в maxPageBytes + 1 байт: если ограничение
+     * сработало, страница была больше допустимой.
+     */
+    public void checkBody(String url, int length) throws SkippedContentException {
+        if (length > maxPageBytes) {
+            throw tooLarge(url, "");
+        }
+    }
+
+    private SkippedContentException tooLarge(String url, String size) {
+        return skip(SkippedContentException.TOO_LARGE, "too_large",
+                "Страница больше " + maxPageBytes + " байт" + size + ": " + url);
+    }
+
+    private SkippedContentException skip(int code, String reason, String message) {
+        indexingMetrics.skippedUrl(reason);
+        return new SkippedContentException(code, reason, message);
+    }
+
+    private static boolean isHtml(String contentType) {
+        String type = contentType.toLowerCase(Locale.ROOT);
+        return type.startsWith("text/html") || type.startsWith("application/xhtml+xml");
+    }
+
+    // Расширение последнего сегмента пути без строки запроса и фрагмента
+    private static String extension(String url) {
+        int end = url.length();
+        int query = url.indexOf('?');
+        if (query >= 0) {
+            end = query;
+        }
+        int fragment = url.indexOf('#');
+        if (fragment >= 0 && fragment < end) {
+            end = fragment;
+        }
+        int slash = url.lastIndexOf('/', end - 1);
+        int dot = url.lastIndexOf('.', end - 1);
+        if (dot <= slash || dot == end - 1) {
+            return null;
+        }
+        // Точка в имени хоста ("https://site.ru") — не расширение
+        if (slash > 0 && url.charAt(slash - 1) == '/') {
+            return null;
+        }
+        return url.substring(dot + 1, end).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,90 @@
+package searchengine.services;
+
+import org.springframework.stereotype.Component;
+import searchengine.model.Site;
+import searchengine.model.SiteStatus;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики хода обхода по сайтам. Обновляются потоками обхода без блокировок,
+ * читаются раз в такт публикатором событий.
+ */
+@Component
+public class CrawlProgress {
+
+    private final Map<String, SiteProgress> progress = new ConcurrentHashMap<>();
+
+    /**
+     * Начинает новый обход сайта с обнулёнными счётчиками.
+     */
+    public void crawlStarted(Site site) {
+        progress.put(site.getUrl(), new SiteProgress(site.getUrl(), site.getName()));
+    }
+
+    public void statusChanged(Site site, SiteStatus status) {
+        get(site).status = status;
+    }
+
+    public void pageFetched(Site site) {
+        get(site).pagesFetched.increment();
+    }
+
+    public void fetchFailed(Site site) {
+        get(site).errors.increment();
+    }
+
+    public void queueDepth(Site site, int depth) {
+        get(site).queueDepth.set(depth);
+    }
+
+    public Collection<SiteProgress> snapshot() {
+        return progress.values();
+    }
+
+    private SiteProgress get(Site site) {
+        return progress.computeIfAbsent(site.getUrl(), url -> new SiteProgress(url, site.getName()));
+    }
+
+    public static class SiteProgress {
+        private final String url;
+        private final String name;
+        private final LongAdder pagesFetched = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final AtomicInteger queueDepth = new AtomicInteger();
+        private volatile SiteStatus status = SiteStatus.INDEXING;
+
+        SiteProgress(String url, String name) {
+            this.url = url;
+            this.name = name;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getPagesFetched() {
+            return pagesFetched.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public int getQueueDepth() {
+            return queueDepth.get();
+        }
+
+        public SiteStatus getStatus() {
+            return status;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package searchengine.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.jsoup.HttpStatusException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Число одновременных запросов к каждому хосту, подбираемое по ответам (AIMD). Пока ответы
+ * приходят без ошибок и без роста задержки, предел растёт на единицу за каждые «предел»
+ * ответов. Таймаут, ошибка соединения, 5xx, 429 или задержка больше
+ * app.crawlLatencyFactor × обычной для хоста делят предел пополам. Задержка считается
+ * до получения заголовков ответа: время чтения тела зависит от размера страницы.
+ * <p>
+ * Хост здесь — сайт из конфигурации, к которому относится адрес. Все адреса вне сайтов
+ * делят один общий предел, поэтому ограничителей и их метрик не больше, чем сайтов.
+ * <p>
+ * После ответа место у хоста занято ещё app.crawlDelayMs: это пауза вежливости для каждого
+ * соединения, а не для всего обхода, поэтому быстрый сайт обходится в несколько потоков,
+ * а медленный — по одному запросу, как раньше.
+ */
+@Component
+public class CrawlRateController {
+
+    private static final double BACKOFF = 0.5;
+    // Вес нового замера в обычной задержке хоста
+    private static final double BASELINE_WEIGHT = 0.05;
+    // Короче этого задержку не считаем всплеском: на локальных сайтах она скачет в разы
+    private static final double MIN_SPIKE_MS = 50;
+
+    private final MeterRegistry registry;
+    private final SiteRegistry siteRegistry;
+    private final double initialLimit;
+    private final int maxLimit;
+    private final double latencyFactor;
+    private final long delayMs;
+    private final Map<String, HostLimiter> hosts = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService pacing = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "crawl-pacing");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CrawlRateController(MeterRegistry registry,
+                               SiteRegistry siteRegistry,
+                               @Value("${app.crawlInitialConcurrency:1}") int initialLimit,
+                               @Value("${app.crawlMaxConcurrency:4}") int maxLimit,
+                               @Value("${app.crawlLatencyFactor:2.0}") double latencyFactor,
+                               @Value("${app.crawlDelayMs:500}") long delayMs) {
+        this.registry = registry;
+        this.siteRegistry = siteRegistry;
+        this.maxLimit = Math.max(1, maxLimit);
+        this.initialLimit = Math.min(this.maxLimit, Math.max(1, initialLimit));
+        this.latencyFactor = latencyFactor;
+        this.delayMs = delayMs;
+    }
+
+    @PreDestroy
+    public void stop() {
+        pacing.shutdownNow();
+    }
+
+    /**
+     * Ждёт свободного места у хоста. Полученное место нужно вернуть одним из методов
+     * {@link Permit}.
+     */
+    public Permit acquire(String url) throws InterruptedException {
+        String site = siteRegistry.rootUrl(url).orElse(IndexingMetrics.EXTERNAL);
+        HostLimiter limiter = hosts.computeIfAbsent(site, HostLimiter::new);
+        return new Permit(limiter, limiter.acquire());
+    }
+
+    /**
+     * Таймаут, 5xx и 429 — признаки перегрузки хоста: такой запрос имеет смысл повторить
+     * после снижения предела.
+     */
+    public static boolean isOverload(IOException e) {
+        if (e instanceof HttpStatusException status) {
+            return status.getStatusCode() >= 500 || status.getStatusCode() == 429;
+        }
+        return e instanceof SocketTimeoutException;
+    }
+
+    /**
+     * Причина неудачного запроса для тегов метрик: http_503, timeout или io_error.
+     */
+    public static String failureCause(IOException e) {
+        if (e instanceof HttpStatusException status) {
+            return "http_" + status.getStatusCode();
+        }
+        return e instanceof SocketTimeoutException ? "timeout" : "io_error";
+    }
+
+    public final class Permit {
+
+        private final HostLimiter limiter;
+        private final long started;
+        private final AtomicBoolean released = new AtomicBoolean();
+        // Получение заголовков ответа (System.nanoTime()), 0 — ещё не получены
+        private volatile long responded;
+
+        private Permit(HostLimiter limiter, long started) {
+            this.limiter = limiter;
+            this.started = started;
+        }
+
+        /**
+         * Отмечает получение заголовков ответа: задержка хоста считается до этого момента.
+         */
+        public void responded() {
+            if (responded == 0) {
+                responded = System.nanoTime();
+            }
+        }
+
+        public void succeeded() {
+            if (released.compareAndSet(false, true)) {
+                long finished = System.nanoTime();
+                limiter.succeeded(started, responded == 0 ? finished : responded, finished);
+                release();
+            }
+        }
+
+        public void overloaded(String cause) {
+            if (released.compareAndSet(false, true)) {
+                limiter.overloaded(started, System.nanoTime(), cause);
+                release();
+            }
+        }
+
+        /**
+         * Учитывает неудачный запрос. Остальные ошибки HTTP (404 и т.п.) — обычный ответ хоста,
+         * а ошибка соединения тоже снижает предел, но без повтора.
+         */
+        public void failed(IOException e) {
+            if (e instanceof HttpStatusException && !isOverload(e)) {
+                succeeded();
+            } else {
+                overloaded(failureCause(e));
+            }
+        }
+
+        /**
+         * Ответ ничего не говорит о нагрузке на хост: например, тело не загружалось.
+         */
+        public void ignored() {
+            if (released.compareAndSet(false, true)) {
+                release();
+            }
+        }
+
+        private void release() {
+            if (delayMs <= 0) {
+                limiter.free();
+                return;
+            }
+            try {
+                pacing.schedule(limiter::free, delayMs, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                limiter.free();
+            }
+        }
+    }
+
+    private final class HostLimiter {
+
+        private final String site;
+        private double limit = initialLimit;
+        private int inFlight;
+        private double baselineMs;
+        // Время последнего снижения: ответы на запросы, отправленные раньше, его уже учли
+        private long lastDecrease = Long.MIN_VALUE;
+
+        HostLimiter(String site) {
+            this.site = site;
+            Gauge.builder("crawler.host.concurrency.limit", this, HostLimiter::limit)
+                    .description("Допустимое число одновременных запросов к хосту")
+                    .tag("site", site)
+                    .register(registry);
+            Gauge.builder("crawler.host.inflight", this, HostLimiter::inFlight)
+                    .description("Запросы к хосту, занимающие место, включая паузу после ответа")
+                    .tag("site", site)
+                    .register(registry);
+            Gauge.builder("crawler.host.latency.baseline", this, HostLimiter::baselineMs)
+                    .description("Обычная задержка ответа хоста, мс")
+                    .tag("site", site)
+                    .register(registry);
+        }
+
+        synchronized long acquire() throws InterruptedException {
+            while (inFlight >= (int) limit) {
+                wait();
+            }
+            inFlight++;
+            return System.nanoTime();
+        }
+
+        synchronized void free() {
+            inFlight--;
+            notifyAll();
+        }
+
+        synchronized void succeeded(long started, long responded, long finished) {
+            double latencyMs = (responded - started) / 1_000_000.0;
+            if (baselineMs > 0 && latencyMs > MIN_SPIKE_MS && latencyMs > baselineMs * latencyFactor) {
+                decrease(started, finished, "latency");
+                return;
+            }
+            baselineMs = baselineMs == 0 ? latencyMs : baselineMs + BASELINE_WEIGHT * (latencyMs - baselineMs);
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+
+        synchronized void overloaded(long started, long finished, String cause) {
+            decrease(started, finished, cause);
+        }
+
+        private void decrease(long started, long finished, String cause) {
+            // Несколько одновременных запросов, попавших в одну перегрузку, снижают предел один раз
+            if (started < lastDecrease) {
+                return;
+            }
+            limit = Math.max(1, limit * BACKOFF);
+            lastDecrease = finished;
+            Counter.builder("crawler.host.concurrency.decreases")
+                    .description("Снижения предела одновременных запросов к хосту")
+                    .tag("site", site)
+                    .tag("cause", cause)
+                    .register(registry)
+                    .increment();
+        }
+
+        synchronized double limit() {
+            return limit;
+        }
+
+        synchronized double inFlight() {
+            return inFlight;
+        }
+
+        synchronized double baselineMs() {
+            return baselineMs;
+        }
+    }
+}
@@ -19,7 +19,7 @@ public class DatabaseServiceImpl implements DatabaseService {
 
     @Override
     public Optional<Site> getExistingSiteByUrl(String url) {
-        return siteRepository.findByUrl(url);
+        return siteRepository.findFirstByUrlAndLiveTrueOrderByIdDesc(url);
     }
 
 }
\ No newline at end of file
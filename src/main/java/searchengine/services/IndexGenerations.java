@@ -0,0 +1,34 @@
+package searchengine.services;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Счётчики поколений индекса по сайтам. Любое изменение страниц сайта увеличивает
+ * его поколение, и закэшированные результаты поиска по этому сайту становятся недействительными.
+ */
+@Component
+public class IndexGenerations {
+
+    private final Map<Long, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    public long current(Long siteId) {
+        AtomicLong generation = generations.get(siteId);
+        return generation == null ? 0 : generation.get();
+    }
+
+    /**
+     * Увеличивает поколение сайта. Внутри транзакции это происходит только после коммита,
+     * чтобы параллельный запрос не закэшировал ещё не зафиксированные данные под новым поколением.
+     */
+    public void bump(Long siteId) {
+        TransactionHooks.afterCommit(() -> increment(siteId));
+    }
+
+    private void increment(Long siteId) {
+        generations.computeIfAbsent(siteId, id -> new AtomicLong()).incrementAndGet();
+    }
+}
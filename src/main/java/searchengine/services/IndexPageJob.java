@@ -0,0 +1,77 @@
+package searchengine.services;
+
+import searchengine.dto.indexing.IndexPageJobStatus;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Задание на переиндексацию набора страниц, принятое одним запросом к /api/indexPages.
+ */
+class IndexPageJob {
+
+    // Сколько ошибок хранить в задании: остальные только считаются
+    private static final int MAX_ERRORS = 100;
+
+    private final String id;
+    private final int total;
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger started = new AtomicInteger();
+    private final Map<String, String> errors = new ConcurrentHashMap<>();
+    private volatile long finishedAt;
+
+    IndexPageJob(String id, int total) {
+        this.id = id;
+        this.total = total;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    void pageStarted() {
+        started.incrementAndGet();
+    }
+
+    void pageCompleted() {
+        if (completed.incrementAndGet() + failed.get() == total) {
+            finishedAt = System.currentTimeMillis();
+        }
+    }
+
+    void pageFailed(String url, String error) {
+        if (errors.size() < MAX_ERRORS) {
+            errors.put(url, error);
+        }
+        if (failed.incrementAndGet() + completed.get() == total) {
+            finishedAt = System.currentTimeMillis();
+        }
+    }
+
+    boolean isFinished() {
+        return finishedAt != 0;
+    }
+
+    long getFinishedAt() {
+        return finishedAt;
+    }
+
+    IndexPageJobStatus toStatus() {
+        IndexPageJobStatus status = new IndexPageJobStatus();
+        status.setId(id);
+        status.setTotal(total);
+        status.setCompleted(completed.get());
+        status.setFailed(failed.get());
+        status.setErrors(Map.copyOf(errors));
+        if (isFinished()) {
+            status.setStatus("DONE");
+        } else if (started.get() > 0) {
+            status.setStatus("RUNNING");
+        } else {
+            status.setStatus("QUEUED");
+        }
+        return status;
+    }
+}
@@ -0,0 +1,166 @@
+package searchengine.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import searchengine.dto.indexing.IndexPageJobStatus;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Фоновая переиндексация отдельных страниц. URL из запросов к /api/indexPages попадают
+ * в ограниченную очередь, которую разбирают app.indexPageThreads потоков. Очередь
+ * не хранит дубликатов: если URL ещё ждёт обработки, новое задание просто подписывается
+ * на его результат, поэтому пачка одинаковых уведомлений от CMS индексирует страницу один раз.
+ */
+@Service
+public class IndexPageQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexPageQueue.class);
+
+    private final IndexingService indexingService;
+    private final BlockingQueue<String> queue;
+    // URL, ожидающие обработки, и задания, которые ждут их результата
+    private final Map<String, List<IndexPageJob>> waiting = new ConcurrentHashMap<>();
+    private final Map<String, IndexPageJob> jobs = new ConcurrentHashMap<>();
+    private final int threads;
+    private final int maxUrls;
+    private final long jobTtlMs;
+    private final List<Thread> workers = new ArrayList<>();
+
+    public IndexPageQueue(IndexingService indexingService,
+                          MeterRegistry meterRegistry,
+                          @Value("${app.indexPageQueueSize:10000}") int queueSize,
+                          @Value("${app.indexPageThreads:2}") int threads,
+                          @Value("${app.indexPageMaxUrls:1000}") int maxUrls,
+                          @Value("${app.indexPageJobTtlMs:3600000}") long jobTtlMs) {
+        this.indexingService = indexingService;
+        this.queue = new LinkedBlockingQueue<>(queueSize);
+        this.threads = threads;
+        this.maxUrls = maxUrls;
+        this.jobTtlMs = jobTtlMs;
+        Gauge.builder("indexing.page.queue.size", queue, BlockingQueue::size)
+                .description("Страницы, ожидающие фоновой переиндексации")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        for (int i = 1; i <= threads; i++) {
+            Thread worker = new Thread(this::run, "index-page-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        workers.forEach(Thread::interrupt);
+    }
+
+    /**
+     * Принимает задание целиком или отклоняет его, если URL больше, чем помещается в очередь.
+     */
+    public String submit(Collection<String> urls) throws IndexingException {
+        Set<String> unique = new LinkedHashSet<>();
+        for (String url : urls) {
+            if (url != null && !url.isBlank()) {
+                unique.add(url.strip());
+            }
+        }
+        if (unique.isEmpty()) {
+            throw new IndexingException("Не передано ни одного URL");
+        }
+        if (unique.size() > maxUrls) {
+            throw new IndexingException("Слишком много URL в одном запросе: " + unique.size()
+                    + ", допускается не больше " + maxUrls);
+        }
+        if (queue.remainingCapacity() < unique.size()) {
+            throw new IndexingException("Очередь переиндексации переполнена, повторите запрос позже");
+        }
+
+        IndexPageJob job = new IndexPageJob(UUID.randomUUID().toString(), unique.size());
+        jobs.put(job.getId(), job);
+        for (String url : unique) {
+            boolean[] added = new boolean[1];
+            waiting.compute(url, (key, subscribers) -> {
+                if (subscribers == null) {
+                    subscribers = new ArrayList<>();
+                    added[0] = true;
+                }
+                subscribers.add(job);
+                return subscribers;
+            });
+            // Место проверено заранее, но его могли занять параллельные запросы
+            if (added[0] && !queue.offer(url)) {
+                List<IndexPageJob> dropped = waiting.remove(url);
+                if (dropped != null) {
+                    dropped.forEach(subscriber -> subscriber.pageFailed(url, "Очередь переиндексации переполнена"));
+                }
+            }
+        }
+        return job.getId();
+    }
+
+    public Optional<IndexPageJobStatus> getStatus(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(IndexPageJob::toStatus);
+    }
+
+    @Scheduled(fixedDelayString = "${app.indexPageJobTtlMs:3600000}")
+    public void evictFinishedJobs() {
+        long threshold = System.currentTimeMillis() - jobTtlMs;
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt() < threshold);
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            String url;
+            try {
+                url = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            // После удаления из waiting новые запросы на этот URL снова попадут в очередь
+            List<IndexPageJob> subscribers = waiting.remove(url);
+            if (subscribers == null) {
+                continue;
+            }
+            subscribers.forEach(IndexPageJob::pageStarted);
+            try {
+                indexingService.indexPage(url);
+                subscribers.forEach(IndexPageJob::pageCompleted);
+            } catch (Exception e) {
+                String error = rootMessage(e);
+                logger.warn("Фоновая переиндексация {} не удалась: {}", url, error);
+                subscribers.forEach(job -> job.pageFailed(url, error));
+            }
+        }
+    }
+
+    private static String rootMessage(Throwable e) {
+        String message = e.getMessage();
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null) {
+                message = cause.getMessage();
+            }
+        }
+        return message;
+    }
+}
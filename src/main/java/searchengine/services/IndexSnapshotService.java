@@ -0,0 +1,572 @@
+package searchengine.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.SiteConfig;
+import searchengine.config.SitesList;
+import searchengine.model.Index;
+import searchengine.model.Lemma;
+import searchengine.model.Page;
+import searchengine.model.PageContent;
+import searchengine.model.PageLinks;
+import searchengine.model.PageRefresh;
+import searchengine.model.PageScore;
+import searchengine.model.Site;
+import searchengine.model.SiteStatus;
+import searchengine.repository.IndexEntry;
+import searchengine.repository.IndexRepository;
+import searchengine.repository.LemmaRepository;
+import searchengine.repository.PageContentRepository;
+import searchengine.repository.PageLinksRepository;
+import searchengine.repository.PageRefreshRepository;
+import searchengine.repository.PageRepository;
+import searchengine.repository.PageScoreRepository;
+import searchengine.repository.ScoreEntry;
+import searchengine.repository.SiteRepository;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Снимок индекса для быстрого запуска узла с пустой БД без обхода сайтов. В снимок
+ * выгружаются действующие проиндексированные поколения сайтов: страницы с текстом, HTML,
+ * ссылками и оценками PageRank, словарь лемм и вхождения (см. {@link SnapshotFormat}).
+ * <p>
+ * Загрузка идёт в новое поколение сайта, которое переключается по готовности, как при
+ * переиндексации. При старте (app.snapshotImportOnStart) загружаются только сайты, у
+ * которых ещё нет действующего поколения. Пока сайт загружается, узел держит аренду
+ * сайта: другие узлы не начнут его индексацию, а остановка индексации прерывает загрузку.
+ * Выгружаемый сайт тоже держится под арендой, поэтому его поколение не переключится
+ * и не будет удалено, а повторный обход его не изменит; если поколение всё же
+ * изменилось, выгрузка завершается ошибкой. Выгрузка и загрузка выполняются по одной в своём потоке, порциями по app.resetChunkSize
+ * строк в отдельных транзакциях.
+ */
+@Service
+public class IndexSnapshotService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexSnapshotService.class);
+
+    private final SitesList sitesList;
+    private final SiteRegistry siteRegistry;
+    private final SiteRepository siteRepository;
+    private final SiteService siteService;
+    private final PageRepository pageRepository;
+    private final PageContentRepository pageContentRepository;
+    private final PageLinksRepository pageLinksRepository;
+    private final PageScoreRepository pageScoreRepository;
+    private final PageRefreshRepository pageRefreshRepository;
+    private final LemmaRepository lemmaRepository;
+    private final IndexRepository indexRepository;
+    private final RefreshPolicy refreshPolicy;
+    private final StaticScores staticScores;
+    private final SuggestionService suggestionService;
+    private final IndexingService indexingService;
+    private final LeaseService leaseService;
+    private final TransactionTemplate transactionTemplate;
+    private final Path snapshotPath;
+    private final boolean importOnStart;
+    private final int chunkSize;
+    // Отдельный поток: порции пишутся в своих транзакциях, а не копятся в сессии запроса
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "index-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public IndexSnapshotService(SitesList sitesList,
+                                SiteRegistry siteRegistry,
+                                SiteRepository siteRepository,
+                                SiteService siteService,
+                                PageRepository pageRepository,
+                                PageContentRepository pageContentRepository,
+                                PageLinksRepository pageLinksRepository,
+                                PageScoreRepository pageScoreRepository,
+                                PageRefreshRepository pageRefreshRepository,
+                                LemmaRepository lemmaRepository,
+                                IndexRepository indexRepository,
+                                RefreshPolicy refreshPolicy,
+                                StaticScores staticScores,
+                                SuggestionService suggestionService,
+                                IndexingService indexingService,
+                                LeaseService leaseService,
+                                TransactionTemplate transactionTemplate,
+                                @Value("${app.snapshotPath:index.snapshot}") String snapshotPath,
+                                @Value("${app.snapshotImportOnStart:true}") boolean importOnStart,
+                                @Value("${app.resetChunkSize:1000}") int chunkSize) {
+        this.sitesList = sitesList;
+        this.siteRegistry = siteRegistry;
+        this.siteRepository = siteRepository;
+        this.siteService = siteService;
+        this.pageRepository = pageRepository;
+        this.pageContentRepository = pageContentRepository;
+        this.pageLinksRepository = pageLinksRepository;
+        this.pageScoreRepository = pageScoreRepository;
+        this.pageRefreshRepository = pageRefreshRepository;
+        this.lemmaRepository = lemmaRepository;
+        this.indexRepository = indexRepository;
+        this.refreshPolicy = refreshPolicy;
+        this.staticScores = staticScores;
+        this.suggestionService = suggestionService;
+        this.indexingService = indexingService;
+        this.leaseService = leaseService;
+        this.transactionTemplate = transactionTemplate;
+        this.snapshotPath = Path.of(snapshotPath);
+        this.importOnStart = importOnStart;
+        this.chunkSize = chunkSize;
+    }
+
+    @PreDestroy
+    public void stop() {
+        worker.shutdownNow();
+    }
+
+    public Path getSnapshotPath() {
+        return snapshotPath;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void importOnStart() {
+        if (!importOnStart || !Files.isRegularFile(snapshotPath)) {
+            return;
+        }
+        try {
+            SnapshotStats stats = importSnapshot(false);
+            logger.info("Снимок индекса {} загружен при старте: {}", snapshotPath, stats);
+        } catch (IndexingException e) {
+            logger.warn("Снимок индекса {} не загружен: {}", snapshotPath, e.getMessage());
+        }
+    }
+
+    /**
+     * Выгружает действующие проиндексированные сайты в app.snapshotPath. Файл заменяется
+     * только целиком записанным снимком.
+     */
+    public SnapshotStats exportSnapshot() throws IndexingException {
+        if (indexingService.isIndexing()) {
+            throw new IndexingException("Индексация уже запущена");
+        }
+        return run(() -> {
+            Path temp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+            SnapshotStats stats = new SnapshotStats();
+            try (SnapshotWriter writer = new SnapshotWriter(temp)) {
+                for (Site site : siteRegistry.liveSites()) {
+                    if (site.getStatus() == SiteStatus.INDEXED) {
+                        exportLeased(site, writer, stats);
+                    }
+                }
+                stats.bytes = writer.finish();
+            } catch (IOException | IndexingException | RuntimeException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+            Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Снимок индекса выгружен в {}: {}", snapshotPath, stats);
+            return stats;
+        }, "Не удалось выгрузить снимок индекса");
+    }
+
+    /**
+     * Загружает снимок из app.snapshotPath.
+     *
+     * @param replace заменять ли сайты, у которых уже есть действующее поколение
+     */
+    public SnapshotStats importSnapshot(boolean replace) throws IndexingException {
+        if (!Files.isRegularFile(snapshotPath)) {
+            throw new IndexingException("Снимок индекса не найден: " + snapshotPath);
+        }
+        if (indexingService.isIndexing()) {
+            throw new IndexingException("Индексация уже запущена");
+        }
+        SnapshotStats stats = run(() -> {
+            SnapshotStats loaded = new SnapshotStats();
+            try (SnapshotReader reader = new SnapshotReader(snapshotPath)) {
+                loaded.bytes = Files.size(snapshotPath);
+                byte tag;
+                while ((tag = reader.tag()) != SnapshotFormat.END) {
+                    if (tag != SnapshotFormat.SITE) {
+                        throw new IOException("Неожиданная запись в снимке индекса: " + tag);
+                    }
+                    String[] site = reader.site();
+                    importSite(reader, site[0], replace, loaded);
+                }
+            }
+            return loaded;
+        }, "Не удалось загрузить снимок индекса");
+        if (stats.sites > 0) {
+            suggestionService.loadDictionary();
+        }
+        return stats;
+    }
+
+    private SnapshotStats run(Callable<SnapshotStats> task, String error) throws IndexingException {
+        Future<SnapshotStats> future = worker.submit(task);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IndexingException(error + ": операция прервана", e);
+        } catch (ExecutionException e) {
+            logger.error(error, e.getCause());
+            throw new IndexingException(error + ": " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    // Сайт выгружается под его арендой: пока она у нас, индексация сайта не начнётся,
+    // а повторный обход не возьмётся за него (проверяет isIndexing после взятия своей аренды)
+    private void exportLeased(Site site, SnapshotWriter writer, SnapshotStats stats)
+            throws IOException, IndexingException {
+        String url = site.getUrl();
+        String lease = LeaseService.SITE + url;
+        if (leaseService.isHeld(lease) || !leaseService.tryAcquire(lease, null)) {
+            throw new IndexingException("Сайт " + url + " индексируется, снимок не выгружен");
+        }
+        try {
+            if (leaseService.isActive(RecrawlScheduler.LEASE + url)) {
+                throw new IndexingException("Сайт " + url + " обновляется повторным обходом, снимок не выгружен");
+            }
+            Site current = siteRepository.findById(site.getId()).orElse(null);
+            if (current == null || !current.isLive() || current.getStatus() != SiteStatus.INDEXED) {
+                throw new IndexingException("Поколение сайта " + url + " сменилось, снимок не выгружен");
+            }
+            exportSite(current, writer, stats);
+            Site after = siteRepository.findById(site.getId()).orElse(null);
+            if (!leaseService.isHeld(lease) || after == null || !after.isLive()
+                    || !after.getStatusTime().equals(current.getStatusTime())) {
+                throw new IndexingException("Сайт " + url + " изменился во время выгрузки, снимок не выгружен");
+            }
+        } finally {
+            leaseService.release(lease);
+        }
+    }
+
+    private void exportSite(Site site, SnapshotWriter writer, SnapshotStats stats) throws IOException {
+        writer.site(site.getUrl(), site.getName());
+        Map<Long, Float> scores = new HashMap<>();
+        for (ScoreEntry entry : pageScoreRepository.findScores(site)) {
+            scores.put(entry.getPageId(), entry.getScore());
+        }
+
+        // Номер страницы в снимке — её позиция в pageIds, id идут по возрастанию
+        long[] pageIds = new long[1024];
+        int pages = 0;
+        long after = 0;
+        while (true) {
+            List<Page> chunk = pageRepository.findBySiteAfter(site, after, PageRequest.of(0, chunkSize));
+            if (chunk.isEmpty()) {
+                break;
+            }
+            List<Long> ids = chunk.stream().map(Page::getId).toList();
+            Map<Long, PageContent> contents = new HashMap<>();
+            pageContentRepository.findAllById(ids).forEach(content -> contents.put(content.getPageId(), content));
+            Map<Long, String> links = new HashMap<>();
+            pageLinksRepository.findAllById(ids).forEach(link -> links.put(link.getPageId(), link.getTargets()));
+            for (Page page : chunk) {
+                PageContent content = contents.get(page.getId());
+                writer.page(new SnapshotFormat.PageRecord(page.getPath(), page.getCode(), page.getTitle(),
+                        page.getSimhash(), scores.getOrDefault(page.getId(), Float.NaN),
+                        content == null ? null : content.getText(), content == null ? null : content.getContent(),
+                        links.get(page.getId())));
+                if (pages == pageIds.length) {
+                    pageIds = Arrays.copyOf(pageIds, pages * 2);
+                }
+                pageIds[pages++] = page.getId();
+            }
+            after = chunk.get(chunk.size() - 1).getId();
+        }
+        stats.pages += pages;
+
+        long lemmaAfter = 0;
+        while (true) {
+            List<Lemma> lemmas = lemmaRepository.findBySiteAndIdGreaterThanOrderById(site, lemmaAfter,
+                    PageRequest.of(0, chunkSize));
+            if (lemmas.isEmpty()) {
+                break;
+            }
+            // Вхождения читаются порциями примерно по chunkSize строк: frequency леммы —
+            // число её страниц. Лемма чаще chunkSize читается одна
+            int from = 0;
+            while (from < lemmas.size()) {
+                int to = from + 1;
+                long postings = lemmas.get(from).getFrequency();
+                while (to < lemmas.size() && postings + lemmas.get(to).getFrequency() <= chunkSize) {
+                    postings += lemmas.get(to).getFrequency();
+                    to++;
+                }
+                exportLemmas(lemmas.subList(from, to), pageIds, pages, writer, stats);
+                from = to;
+            }
+            lemmaAfter = lemmas.get(lemmas.size() - 1).getId();
+        }
+        writer.siteEnd();
+        stats.sites++;
+    }
+
+    private void exportLemmas(List<Lemma> lemmas, long[] pageIds, int pages,
+                              SnapshotWriter writer, SnapshotStats stats) throws IOException {
+        Map<Long, List<IndexEntry>> entries = new HashMap<>();
+        for (IndexEntry entry : indexRepository.findEntriesByLemmas(lemmas)) {
+            entries.computeIfAbsent(entry.getLemmaId(), id -> new ArrayList<>()).add(entry);
+        }
+        for (Lemma lemma : lemmas) {
+            List<IndexEntry> lemmaEntries = entries.getOrDefault(lemma.getId(), List.of());
+            writer.lemma(lemmaRecord(lemma, lemmaEntries, pageIds, pages));
+            stats.lemmas++;
+            stats.postings += lemmaEntries.size();
+        }
+    }
+
+    private static SnapshotFormat.LemmaRecord lemmaRecord(Lemma lemma, List<IndexEntry> entries,
+                                                          long[] pageIds, int pages) {
+        int[] ordinals = new int[entries.size()];
+        float[] ranks = new float[entries.size()];
+        int[] firstOffsets = new int[entries.size()];
+        byte[][] positions = new byte[entries.size()][];
+        int count = 0;
+        for (IndexEntry entry : entries) {
+            int ordinal = Arrays.binarySearch(pageIds, 0, pages, entry.getPageId());
+            // Страница, добавленная после выгрузки страниц сайта, в снимок не попала
+            if (ordinal < 0) {
+                continue;
+            }
+            ordinals[count] = ordinal;
+            ranks[count] = entry.getRankValue();
+            firstOffsets[count] = entry.getFirstOffset();
+            positions[count] = entry.getPositions();
+            count++;
+        }
+        return new SnapshotFormat.LemmaRecord(lemma.getLemma(), lemma.getFrequency(),
+                Arrays.copyOf(ordinals, count), Arrays.copyOf(ranks, count),
+                Arrays.copyOf(firstOffsets, count), Arrays.copyOf(positions, count));
+    }
+
+    private void importSite(SnapshotReader reader, String url, boolean replace, SnapshotStats stats)
+            throws IOException, IndexingException {
+        SiteConfig siteConfig = sitesList.getSiteConfigs().stream()
+                .filter(config -> config.getUrl().equals(url))
+                .findFirst()
+                .orElse(null);
+        String lease = LeaseService.SITE + url;
+        if (siteConfig == null) {
+            logger.info("Сайт {} из снимка отсутствует в конфигурации и пропущен", url);
+            skipSite(reader);
+            return;
+        }
+        if (!replace && siteRepository.findFirstByUrlAndLiveTrueOrderByIdDesc(url).isPresent()) {
+            skipSite(reader);
+            return;
+        }
+        if (!leaseService.tryAcquire(lease, null)) {
+            logger.info("Сайт {} индексируется другим узлом, загрузка из снимка пропущена", url);
+            skipSite(reader);
+            return;
+        }
+        Site shadow = siteService.createShadowSite(siteConfig);
+        try {
+            SiteImport site = new SiteImport(shadow);
+            byte tag;
+            while ((tag = reader.tag()) != SnapshotFormat.SITE_END) {
+                if (!leaseService.isHeld(lease)) {
+                    throw new IndexingException("Загрузка сайта " + url + " из снимка остановлена");
+                }
+                if (tag == SnapshotFormat.PAGE) {
+                    site.add(reader.page());
+                } else if (tag == SnapshotFormat.LEMMA) {
+                    site.add(reader.lemma());
+                } else {
+                    throw new IOException("Неожиданная запись в снимке индекса: " + tag);
+                }
+            }
+            site.flush();
+            if (!siteService.promote(shadow, lease)) {
+                throw new IndexingException("Загрузка сайта " + url + " из снимка остановлена");
+            }
+            site.warmUp();
+            stats.sites++;
+            stats.pages += site.pages;
+            stats.lemmas += site.lemmas;
+            stats.postings += site.postings;
+            logger.info("Сайт {} загружен из снимка: страниц {}, лемм {}", url, site.pages, site.lemmas);
+        } catch (IOException | IndexingException | RuntimeException e) {
+            siteService.indexingFailed(shadow, "Не удалось загрузить сайт из снимка: " + e.getMessage());
+            throw e;
+        } finally {
+            leaseService.release(lease);
+        }
+    }
+
+    private static void skipSite(SnapshotReader reader) throws IOException {
+        byte tag;
+        while ((tag = reader.tag()) != SnapshotFormat.SITE_END) {
+            if (tag == SnapshotFormat.PAGE) {
+                reader.page();
+            } else if (tag == SnapshotFormat.LEMMA) {
+                reader.lemma();
+            } else {
+                throw new IOException("Неожиданная запись в снимке индекса: " + tag);
+            }
+        }
+    }
+
+    /**
+     * Запись одного сайта из снимка: страницы и леммы копятся и пишутся порциями, номер
+     * страницы в снимке переводится в её новый id.
+     */
+    private class SiteImport {
+        private final Site site;
+        private final List<SnapshotFormat.PageRecord> pendingPages = new ArrayList<>();
+        private final List<SnapshotFormat.LemmaRecord> pendingLemmas = new ArrayList<>();
+        private long[] pageIds = new long[1024];
+        private float[] scores = new float[1024];
+        private int pages;
+        private long lemmas;
+        private long postings;
+        private int pendingPostings;
+
+        SiteImport(Site site) {
+            this.site = site;
+        }
+
+        void add(SnapshotFormat.PageRecord page) {
+            pendingPages.add(page);
+            if (pendingPages.size() >= chunkSize) {
+                flushPages();
+            }
+        }
+
+        void add(SnapshotFormat.LemmaRecord lemma) {
+            flushPages();
+            pendingLemmas.add(lemma);
+            pendingPostings += lemma.pages().length;
+            if (pendingLemmas.size() >= chunkSize || pendingPostings >= chunkSize) {
+                flushLemmas();
+            }
+        }
+
+        void flush() {
+            flushPages();
+            flushLemmas();
+        }
+
+        /**
+         * Оценки PageRank сразу попадают в память поиска, без чтения из БД.
+         */
+        void warmUp() {
+            staticScores.update(site.getId(), Arrays.copyOf(pageIds, pages), Arrays.copyOf(scores, pages));
+        }
+
+        private void flushPages() {
+            if (pendingPages.isEmpty()) {
+                return;
+            }
+            LocalDateTime now = LocalDateTime.now();
+            transactionTemplate.executeWithoutResult(status -> {
+                List<Page> saved = new ArrayList<>(pendingPages.size());
+                for (SnapshotFormat.PageRecord record : pendingPages) {
+                    saved.add(pageRepository.save(new Page(null, site, record.path(), record.code(),
+                            record.title(), record.simhash())));
+                }
+                List<PageContent> contents = new ArrayList<>(saved.size());
+                List<PageLinks> links = new ArrayList<>(saved.size());
+                List<PageScore> pageScores = new ArrayList<>(saved.size());
+                List<PageRefresh> refreshes = new ArrayList<>(saved.size());
+                for (int i = 0; i < saved.size(); i++) {
+                    SnapshotFormat.PageRecord record = pendingPages.get(i);
+                    Page page = saved.get(i);
+                    String text = record.text() == null ? "" : record.text();
+                    contents.add(new PageContent(null, page, record.html() == null ? "" : record.html(), text));
+                    links.add(new PageLinks(null, page, record.links() == null ? "" : record.links()));
+                    if (!Float.isNaN(record.score())) {
+                        pageScores.add(new PageScore(null, page, record.score()));
+                    }
+                    // Загруженные страницы обновляет повторный обход, как только что скачанные
+                    refreshes.add(refreshPolicy.firstFetch(page, RefreshPolicy.contentHash(text), now));
+                    if (pages == pageIds.length) {
+                        pageIds = Arrays.copyOf(pageIds, pages * 2);
+                        scores = Arrays.copyOf(scores, pages * 2);
+                    }
+                    pageIds[pages] = page.getId();
+                    scores[pages] = Float.isNaN(record.score()) ? 0 : record.score();
+                    pages++;
+                }
+                pageContentRepository.saveAll(contents);
+                pageLinksRepository.saveAll(links);
+                pageScoreRepository.saveAll(pageScores);
+                pageRefreshRepository.saveAll(refreshes);
+            });
+            pendingPages.clear();
+        }
+
+        private void flushLemmas() {
+            if (pendingLemmas.isEmpty()) {
+                return;
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                List<Lemma> saved = new ArrayList<>(pendingLemmas.size());
+                for (SnapshotFormat.LemmaRecord record : pendingLemmas) {
+                    saved.add(new Lemma(null, site, record.lemma(), record.frequency()));
+                }
+                lemmaRepository.saveAll(saved);
+                List<Index> indexes = new ArrayList<>(pendingPostings);
+                for (int i = 0; i < saved.size(); i++) {
+                    SnapshotFormat.LemmaRecord record = pendingLemmas.get(i);
+                    for (int k = 0; k < record.pages().length; k++) {
+                        if (record.pages()[k] < 0 || record.pages()[k] >= pages) {
+                            throw new IllegalStateException("Лемма " + record.lemma()
+                                    + " ссылается на отсутствующую в снимке страницу " + record.pages()[k]);
+                        }
+                        Page page = pageRepository.getReferenceById(pageIds[record.pages()[k]]);
+                        indexes.add(new Index(null, page, saved.get(i), record.ranks()[k],
+                                record.firstOffsets()[k], record.positions()[k]));
+                    }
+                }
+                indexRepository.saveAll(indexes);
+            });
+            lemmas += pendingLemmas.size();
+            postings += pendingPostings;
+            pendingLemmas.clear();
+            pendingPostings = 0;
+        }
+    }
+
+    /**
+     * Итог выгрузки или загрузки снимка.
+     */
+    public static class SnapshotStats {
+        private int sites;
+        private long pages;
+        private long lemmas;
+        private long postings;
+        private long bytes;
+
+        public Map<String, Object> toMap() {
+            return Map.of("sites", sites, "pages", pages, "lemmas", lemmas, "postings", postings, "bytes", bytes);
+        }
+
+        @Override
+        public String toString() {
+            return "сайтов " + sites + ", страниц " + pages + ", лемм " + lemmas
+                    + ", вхождений " + postings + ", " + bytes + " байт";
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package searchengine.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import searchengine.dto.indexing.IndexingProgressEvent;
+import searchengine.dto.indexing.SiteProgressItem;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Рассылает подписчикам SSE состояние обхода не чаще одного раза за такт,
+ * сколько бы страниц ни было обработано между тактами.
+ * <p>
+ * Такт только собирает состояние, а отправка идёт в отдельном пуле: медленный клиент
+ * не задерживает общий поток @Scheduled. У подписчика не больше одной отправки
+ * в работе, новые события заменяют неотправленное, а подписчик, отправка которому
+ * висит дольше app.indexingEventsSendTimeoutMs, больше не получает событий.
+ */
+@Component
+public class IndexingEventPublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexingEventPublisher.class);
+
+    private final CrawlProgress crawlProgress;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final ExecutorService sender;
+    private final long sendTimeoutMs;
+    private final Map<String, Long> previousFetched = new HashMap<>();
+    private long previousTick = System.nanoTime();
+    // Пишется тактом, читается подпиской из потоков запросов
+    private volatile IndexingProgressEvent lastEvent;
+
+    @Value("${app.indexingEventsTimeoutMs:1800000}")
+    private long emitterTimeoutMs;
+
+    public IndexingEventPublisher(CrawlProgress crawlProgress,
+                                  @Value("${app.indexingEventsThreads:2}") int threads,
+                                  @Value("${app.indexingEventsSendTimeoutMs:10000}") long sendTimeoutMs) {
+        this.crawlProgress = crawlProgress;
+        this.sendTimeoutMs = sendTimeoutMs;
+        this.sender = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "indexing-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        sender.shutdownNow();
+    }
+
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+
+        // Новый подписчик сразу получает последнее известное состояние
+        IndexingProgressEvent event = lastEvent;
+        if (event != null) {
+            publish(subscriber, event);
+        }
+        return emitter;
+    }
+
+    @Scheduled(fixedRateString = "${app.indexingEventsTickMs:1000}")
+    public synchronized void tick() {
+        long now = System.nanoTime();
+        double seconds = Math.max((now - previousTick) / 1e9, 1e-3);
+        previousTick = now;
+
+        List<SiteProgressItem> items = new ArrayList<>();
+        boolean changed = false;
+        for (CrawlProgress.SiteProgress progress : crawlProgress.snapshot()) {
+            long fetched = progress.getPagesFetched();
+            long delta = fetched - previousFetched.getOrDefault(progress.getUrl(), 0L);
+            previousFetched.put(progress.getUrl(), fetched);
+
+            SiteProgressItem item = new SiteProgressItem();
+            item.setUrl(progress.getUrl());
+            item.setName(progress.getName());
+            item.setStatus(progress.getStatus().name());
+            item.setPagesFetched(fetched);
+            item.setPagesPerSecond(delta / seconds);
+            item.setQueueDepth(progress.getQueueDepth());
+            item.setErrors(progress.getErrors());
+            items.add(item);
+            changed |= delta != 0;
+        }
+
+        items.sort(Comparator.comparing(SiteProgressItem::getUrl));
+
+        IndexingProgressEvent event = new IndexingProgressEvent();
+        event.setTimestamp(System.currentTimeMillis());
+        event.setSites(items);
+        changed |= lastEvent == null || !sameState(lastEvent.getSites(), items);
+        lastEvent = event;
+
+        if (changed) {
+            for (Subscriber subscriber : subscribers) {
+                publish(subscriber, event);
+            }
+        }
+    }
+
+    private boolean sameState(List<SiteProgressItem> previous, List<SiteProgressItem> current) {
+        if (previous.size() != current.size()) {
+            return false;
+        }
+        for (int i = 0; i < current.size(); i++) {
+            SiteProgressItem a = previous.get(i);
+            SiteProgressItem b = current.get(i);
+            if (!a.getStatus().equals(b.getStatus()) || a.getQueueDepth() != b.getQueueDepth()
+                    || a.getErrors() != b.getErrors() || a.getPagesFetched() != b.getPagesFetched()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void publish(Subscriber subscriber, IndexingProgressEvent event) {
+        long started = subscriber.sendStarted.get();
+        if (started != 0 && System.nanoTime() - started > sendTimeoutMs * 1_000_000) {
+            // complete() здесь не вызывается: SseEmitter синхронизирует его с зависшей отправкой.
+            // Соединение закроется по ошибке записи или по app.indexingEventsTimeoutMs
+            logger.debug("Подписчик SSE не принимает события дольше {} мс и отключён", sendTimeoutMs);
+            subscribers.remove(subscriber);
+            subscriber.pending.set(null);
+            return;
+        }
+        subscriber.pending.set(event);
+        // Если отправка уже идёт, она заберёт это событие, когда закончит текущее
+        if (!subscriber.draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            sender.execute(() -> drain(subscriber));
+        } catch (RejectedExecutionException e) {
+            subscriber.draining.set(false);
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        while (true) {
+            IndexingProgressEvent event = subscriber.pending.getAndSet(null);
+            if (event == null) {
+                subscriber.draining.set(false);
+                // Событие могло прийти между проверкой и сбросом флага
+                if (subscriber.pending.get() == null || !subscriber.draining.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+            subscriber.sendStarted.set(System.nanoTime());
+            try {
+                subscriber.emitter.send(SseEmitter.event().name("progress").data(event));
+            } catch (IOException | IllegalStateException e) {
+                disconnect(subscriber, e);
+                return;
+            } finally {
+                subscriber.sendStarted.set(0);
+            }
+        }
+    }
+
+    private void disconnect(Subscriber subscriber, Exception e) {
+        logger.debug("Подписчик SSE отключился", e);
+        subscribers.remove(subscriber);
+        subscriber.pending.set(null);
+    }
+
+    private static class Subscriber {
+        private final SseEmitter emitter;
+        // Последнее неотправленное событие
+        private final AtomicReference<IndexingProgressEvent> pending = new AtomicReference<>();
+        // Задача отправки поставлена в пул или выполняется
+        private final AtomicBoolean draining = new AtomicBoolean();
+        // Начало текущей отправки (System.nanoTime()), 0 — отправки нет
+        private final AtomicLong sendStarted = new AtomicLong();
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package searchengine.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+/**
+ * Метрики индексации и поиска. Все таймеры публикуют гистограммы,
+ * чтобы в Prometheus можно было считать перцентили.
+ * <p>
+ * Метрики загрузки страниц помечаются корнем сайта из конфигурации, а не хостом адреса:
+ * число рядов не растёт с числом хостов, на которые ведут ссылки.
+ */
+@Component
+public class IndexingMetrics {
+
+    // Тег адресов вне сайтов конфигурации
+    public static final String EXTERNAL = "external";
+
+    private final MeterRegistry registry;
+    private final SiteRegistry siteRegistry;
+    private final Timer parseTimer;
+    private final Timer textExtractionTimer;
+    private final Timer lemmatizationTimer;
+    private final Timer pageWriteTimer;
+    private final Timer lemmaWriteTimer;
+    private final DistributionSummary lemmasPerPage;
+    private final Timer batchCommitTimer;
+    private final DistributionSummary pagesPerBatch;
+    private final Counter duplicatePages;
+    private final Timer searchTimer;
+    private final Timer snippetTimer;
+
+    public IndexingMetrics(MeterRegistry registry, SiteRegistry siteRegistry) {
+        this.registry = registry;
+        this.siteRegistry = siteRegistry;
+        this.parseTimer = timer("crawler.parse", "Разбор HTML-ответа в Document");
+        this.textExtractionTimer = timer("indexing.text.extraction", "Извлечение текста и заголовка из HTML");
+        this.lemmatizationTimer = timer("indexing.lemmatization", "Лемматизация текста страницы");
+        this.pageWriteTimer = timer("indexing.db.page.write", "Запись страницы в БД");
+        this.lemmaWriteTimer = timer("indexing.db.lemma.write", "Запись лемм и search_index страницы или пакета страниц");
+        this.lemmasPerPage = DistributionSummary.builder("indexing.lemmas.per.page")
+                .description("Число лемм, записываемых за одну страницу")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.batchCommitTimer = timer("indexing.db.batch.commit", "Запись пакета страниц одной транзакцией");
+        this.pagesPerBatch = DistributionSummary.builder("indexing.db.batch.pages")
+                .description("Число страниц в одной транзакции записи")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.duplicatePages = Counter.builder("indexing.duplicate.pages")
+                .description("Страницы, записанные псевдонимами почти одинаковых страниц")
+                .register(registry);
+        this.searchTimer = timer("search.query", "Полное время поискового запроса");
+        this.snippetTimer = timer("search.snippet", "Построение одного сниппета");
+    }
+
+    public Timer fetchTimer(String url, String outcome) {
+        return Timer.builder("crawler.fetch")
+                .description("Загрузка страницы по HTTP")
+                .tag("site", site(url))
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public void httpStatus(String url, int status) {
+        Counter.builder("crawler.http.status")
+                .tag("site", site(url))
+                .tag("status", String.valueOf(status))
+                .register(registry)
+                .increment();
+    }
+
+    public void fetchRetry(String url, String reason) {
+        Counter.builder("crawler.fetch.retries")
+                .description("Повторные загрузки после ответа перегруженного хоста")
+                .tag("site", site(url))
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    public void skippedUrl(String reason) {
+        Counter.builder("crawler.skipped.urls")
+                .description("Адреса, тело которых не загружалось: не HTML или слишком большое")
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    public Timer parseTimer() {
+        return parseTimer;
+    }
+
+    public Timer textExtractionTimer() {
+        return textExtractionTimer;
+    }
+
+    public Timer lemmatizationTimer() {
+        return lemmatizationTimer;
+    }
+
+    public Timer pageWriteTimer() {
+        return pageWriteTimer;
+    }
+
+    public Timer lemmaWriteTimer() {
+        return lemmaWriteTimer;
+    }
+
+    public DistributionSummary lemmasPerPage() {
+        return lemmasPerPage;
+    }
+
+    public Timer batchCommitTimer() {
+        return batchCommitTimer;
+    }
+
+    public DistributionSummary pagesPerBatch() {
+        return pagesPerBatch;
+    }
+
+    public Counter duplicatePages() {
+        return duplicatePages;
+    }
+
+    public Timer searchTimer() {
+        return searchTimer;
+    }
+
+    public Timer snippetTimer() {
+        return snippetTimer;
+    }
+
+    private Timer timer(String name, String description) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private String site(String url) {
+        return siteRegistry.rootUrl(url).orElse(EXTERNAL);
+    }
+}
@@ -8,5 +8,7 @@ public interface IndexingService {
 
     void indexPage(String url) throws IndexingException;
 
+    boolean isIndexing();
+
 
 }
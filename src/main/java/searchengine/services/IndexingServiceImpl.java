@@ -1,28 +1,33 @@
 package searchengine.services;
 
+import org.jsoup.Jsoup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import searchengine.config.SiteConfig;
 import searchengine.config.SitesList;
 import searchengine.model.*;
-import searchengine.repository.SiteRepository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Индексация сайтов из конфигурации. Запуск заводит в общей БД ждущую аренду на каждый сайт,
+ * и каждый узел с той же БД забирает свою долю сайтов (см. {@link LeaseService}). Сайт узла,
+ * переставшего продлевать аренды, переходит к другому узлу, а остановка действует на все узлы.
+ */
 
 @Service
 public class IndexingServiceImpl implements IndexingService {
 
     private static final Logger logger = LoggerFactory.getLogger(IndexingServiceImpl.class);
 
-    private final SiteRepository siteRepository;
-
     private final SiteCrawler siteCrawler;
     private final SitesList sitesList;
 
@@ -32,60 +37,95 @@ public class IndexingServiceImpl implements IndexingService {
     private final ThreadManager threadManager;
     private final DatabaseService databaseService;
 
-    private final TextProcessingService textProcessingService;
+    private final BatchPageWriter batchPageWriter;
+
+    private final PageRankService pageRankService;
 
-    private final LemmaService lemmaService;
+    private final LeaseService leaseService;
 
-    private final AtomicBoolean indexingInProgress = new AtomicBoolean(false);
+    // Сайты, которые индексирует этот узел
+    private final Map<String, SiteConfig> runningSites = new ConcurrentHashMap<>();
 
     @Autowired
-    public IndexingServiceImpl(SiteRepository siteRepository,
-                               SiteCrawler siteCrawler,
+    public IndexingServiceImpl(SiteCrawler siteCrawler,
                                SitesList sitesList,
                                SiteService siteService,
                                PageService pageService,
                                ThreadManager threadManager,
                                DatabaseService databaseService,
-                               TextProcessingService textProcessingService,
-                               LemmaService lemmaService
+                               BatchPageWriter batchPageWriter,
+                               PageRankService pageRankService,
+                               LeaseService leaseService
     ) {
-        this.siteRepository = siteRepository;
         this.siteCrawler = siteCrawler;
         this.sitesList = sitesList;
         this.siteService = siteService;
         this.pageService = pageService;
         this.threadManager = threadManager;
         this.databaseService = databaseService;
-        this.textProcessingService = textProcessingService;
-        this.lemmaService = lemmaService;
+        this.batchPageWriter = batchPageWriter;
+        this.pageRankService = pageRankService;
+        this.leaseService = leaseService;
     }
 
     @Override
     public void startIndexing() throws IndexingException {
-        if (indexingInProgress.getAndSet(true)) {
+        List<String> leases = sitesList.getSiteConfigs().stream()
+                .map(siteConfig -> siteLease(siteConfig.getUrl()))
+                .toList();
+        if (!leaseService.createPending(LeaseService.SITE, leases)) {
             throw new IndexingException("Индексация уже запущена");
         }
+        claimSites();
+    }
 
-        try {
-            List<SiteConfig> siteConfigs = sitesList.getSiteConfigs();
-
-            for (SiteConfig siteConfig : siteConfigs) {
-                try {
-                    logger.info("Начинаем индексацию сайта: {}", siteConfig.getUrl());
-                    indexSite(siteConfig);
-                    logger.info("Индексация сайта {} завершена успешно", siteConfig.getUrl());
-                } catch (Exception e) {
-                    throw new IndexingException("Ошибка при индексации сайта: " + siteConfig.getUrl(), e);
-                }
+    /**
+     * Забирает ждущие и брошенные сайты, пока у узла меньше его доли: сайты делятся
+     * поровну между узлами, продлевающими аренды.
+     */
+    @Scheduled(fixedDelayString = "${app.leaseHeartbeatMs:10000}")
+    public synchronized void claimSites() {
+        List<IndexingLease> leases = leaseService.findLeases(LeaseService.SITE);
+        if (leases.isEmpty()) {
+            return;
+        }
+        int nodes = leaseService.activeNodes();
+        int share = (leases.size() + nodes - 1) / nodes;
+        LocalDateTime now = LocalDateTime.now();
+        for (IndexingLease lease : leases) {
+            if (runningSites.size() >= share) {
+                break;
+            }
+            String url = lease.getName().substring(LeaseService.SITE.length());
+            Optional<SiteConfig> siteConfig = findSiteConfig(url);
+            // Сайт не из нашей конфигурации оставляем узлам, которые о нём знают
+            if (runningSites.containsKey(url) || !lease.isClaimable(now) || siteConfig.isEmpty()) {
+                continue;
+            }
+            if (!leaseService.claim(lease.getName(), () -> siteCrawler.stopCrawling(url))) {
+                continue;
+            }
+            logger.info("Узел {} берёт сайт {}", leaseService.getNodeId(), url);
+            runningSites.put(url, siteConfig.get());
+            try {
+                indexSite(siteConfig.get());
+            } catch (Exception e) {
+                logger.error("Ошибка при индексации сайта: {}", url, e);
+                siteFinished(url);
             }
-        } finally {
-            indexingInProgress.set(false);
         }
     }
 
+    @Override
+    public boolean isIndexing() {
+        return !runningSites.isEmpty() || leaseService.hasActive(LeaseService.SITE);
+    }
+
     @Override
     public void stopIndexing() throws IndexingException {
         logger.info("Остановка индексации");
+        // Остальные узлы прервут свои сайты, когда не смогут продлить аренду
+        leaseService.requestStop(LeaseService.SITE);
         siteCrawler.stopCrawling();
         threadManager.shutdownNow();
 
@@ -106,20 +146,34 @@ public class IndexingServiceImpl implements IndexingService {
     private void performIndexing(Site site, SiteConfig siteConfig) throws IndexingException {
         try {
             logger.info("Начинаем индексацию сайта: {}", siteConfig.getUrl());
-            if (!indexingInProgress.compareAndSet(false, true)) {
+            String lease = siteLease(siteConfig.getUrl());
+            // Аренда проверяется и после обхода: пока он шёл, сайт мог забрать другой узел
+            if (!leaseService.isHeld(lease) || !siteCrawler.crawlSite(site, siteConfig)
+                    || !leaseService.isHeld(lease)) {
+                if (!leaseService.isHeld(lease) && !leaseService.isStopRequested(lease)) {
+                    // Аренда истекла и сайт уже мог забрать другой узел: недостроенное
+                    // поколение удалит SiteGenerationCollector
+                    logger.warn("Аренда сайта {} потеряна, индексация прекращена", siteConfig.getUrl());
+                    return;
+                }
                 logger.info("Индексация прервана: {}", siteConfig.getUrl());
+                siteService.indexingFailed(site, "Индексация остановлена пользователем");
                 return;
             }
-            siteCrawler.crawlSite(siteConfig);
             logger.info("Индексация сайта {} завершена успешно", siteConfig.getUrl());
-            site.setStatus(SiteStatus.INDEXED);
+            // Оценки считаются до переключения, чтобы новое поколение сразу ранжировалось с ними
+            pageRankService.rankSite(site);
+            if (site.isLive()) {
+                siteService.updateStatus(site, SiteStatus.INDEXED, null);
+            } else if (!siteService.promote(site, lease)) {
+                // Поколение не переключено: действующим останется то, что построит новый владелец
+                logger.warn("Аренда сайта {} потеряна до переключения поколения", siteConfig.getUrl());
+                siteService.updateStatus(site, SiteStatus.FAILED, "Аренда сайта потеряна");
+            }
         } catch (Exception e) {
-            site.setLastError(e.getMessage());
             logger.error("Ошибка при индексации сайта: {}", siteConfig.getUrl(), e);
-            site.setStatus(SiteStatus.FAILED);
+            siteService.indexingFailed(site, e.getMessage());
             throw new IndexingException("Ошибка при индексации сайта: " + siteConfig.getUrl(), e);
-        } finally {
-            indexingInProgress.set(false);
         }
     }
 
@@ -129,66 +183,50 @@ public class IndexingServiceImpl implements IndexingService {
                 Optional<Site> existingSiteOptional = databaseService
                         .getExistingSiteByUrl(siteConfig.getUrl());
 
-                Site site;
-                if (existingSiteOptional.isPresent()) {
-                    site = existingSiteOptional.get();
-                    siteService.updateSiteFields(site, siteConfig);
-                } else {
-                    site = siteService.createNewSite(siteConfig);
-                }
+                // Уже проиндексированный сайт обходится в новое поколение, а поиск
+                // до переключения продолжает читать старое
+                Site site = existingSiteOptional.isPresent()
+                        ? siteService.createShadowSite(siteConfig)
+                        : siteService.createNewSite(siteConfig);
                 performIndexing(site, siteConfig);
             } catch (Exception e) {
                 logger.error("Ошибка при индексации сайта: {}", siteConfig.getUrl(), e);
-                setFailedStatus(siteConfig.getUrl(), e.getMessage());
+            } finally {
+                siteFinished(siteConfig.getUrl());
             }
         });
     }
 
-    private void setFailedStatus(String url, String errorMessage) {
-        Optional<Site> existingSiteOptional = getExistingSiteByUrl(url);
-        existingSiteOptional.ifPresent(site -> {
-            site.setStatus(SiteStatus.FAILED);
-            site.setLastError(errorMessage);
-            siteRepository.save(site);
-        });
+    private void siteFinished(String url) {
+        runningSites.remove(url);
+        leaseService.release(siteLease(url));
     }
 
-    private Optional<Site> getExistingSiteByUrl(String url) {
-        return siteRepository.findByUrl(url);
+    private Optional<SiteConfig> findSiteConfig(String url) {
+        return sitesList.getSiteConfigs().stream()
+                .filter(siteConfig -> siteConfig.getUrl().equals(url))
+                .findFirst();
+    }
+
+    private static String siteLease(String url) {
+        return LeaseService.SITE + url;
     }
 
     @Override
     public void indexPage(String url) throws IndexingException {
+        // Сайт определяется до загрузки: страницы чужих сайтов не скачиваются
+        SiteRegistry.SitePage sitePage = siteService.resolvePage(url)
+                .orElseThrow(() -> new IndexingException("Данная страница находится за пределами сайтов, " +
+                        "указанных в конфигурационном файле"));
         try {
             // Шаг 1: Получение HTML-кода страницы
             String htmlContent = siteCrawler.fetchHtmlContent(url);
 
-            // Шаг 2: Сохранение HTML-кода в таблицу page
-            Page page = pageService.createPage(url, htmlContent);
-
-            // Получаем сайт по URL
-            Site site = siteService.getSiteByUrl(url);
-
-            // Шаг 3: Преобразование HTML-кода в леммы и их количества
-            Map<String, Integer> lemmas = textProcessingService.collectLemmas(htmlContent);
-
-            // Шаг 4: Сохранение лемм в таблицу lemma и обновление frequency
-            for (Map.Entry<String, Integer> entry : lemmas.entrySet()) {
-                String lemmaText = entry.getKey();
-                Integer frequency = entry.getValue();
-
-                // Получаем лемму по тексту
-                logger.debug("Trying to get or create lemma for text: {}", lemmaText);
-                Lemma lemma = lemmaService.getOrCreateLemma(lemmaText, site);
-                logger.debug("Lemma found or created successfully: {}", lemma);
-
-                // Обновляем частоту леммы
-                lemma.setFrequency(lemma.getFrequency() + frequency);
-                lemmaService.saveLemma(lemma);
-
-                // Обновляем связь леммы и страницы
-                pageService.updatePageLemmaRelation(page, lemma, frequency);
-            }
+            // Шаг 2: Сохранение страницы, её текста, лемм и записей search_index
+            // через общий писатель, чтобы не конкурировать с идущей индексацией за леммы
+            PreparedPage prepared = pageService.preparePage(sitePage.site(), sitePage.path(), 200,
+                    Jsoup.parse(htmlContent));
+            batchPageWriter.submit(prepared).get();
 
         } catch (Exception e) {
             logger.error("Error indexing page: " + url, e);
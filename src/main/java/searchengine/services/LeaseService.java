@@ -0,0 +1,239 @@
+package searchengine.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.model.IndexingLease;
+import searchengine.repository.IndexingLeaseRepository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Аренды в общей БД для работы нескольких узлов с одной базой. Узел берёт аренду на работу
+ * (индексацию сайта, повторный обход, пересчёт PageRank) и продлевает её раз в
+ * app.leaseHeartbeatMs; аренду, не продлённую за app.leaseTtlMs, может забрать другой узел.
+ * <p>
+ * Продление идёт в отдельном потоке, а не в общем планировщике: долгие задачи по расписанию
+ * не должны задерживать его дольше срока аренды.
+ */
+@Service
+public class LeaseService {
+
+    public static final String SITE = "site:";
+    public static final String NODE = "node:";
+
+    private static final Logger logger = LoggerFactory.getLogger(LeaseService.class);
+
+    private final IndexingLeaseRepository leaseRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final String nodeId;
+    private final long ttlMs;
+    private final long heartbeatMs;
+    // Аренды этого узла и что сделать, если аренду продлить не удалось
+    private final Map<String, Runnable> held = new ConcurrentHashMap<>();
+    private Thread worker;
+
+    public LeaseService(IndexingLeaseRepository leaseRepository,
+                        TransactionTemplate transactionTemplate,
+                        @Value("${app.nodeId:}") String nodeId,
+                        @Value("${app.leaseTtlMs:30000}") long ttlMs,
+                        @Value("${app.leaseHeartbeatMs:10000}") long heartbeatMs) {
+        this.leaseRepository = leaseRepository;
+        this.transactionTemplate = transactionTemplate;
+        // По умолчанию pid@host: у каждого запуска свой id, аренды прошлого запуска просто истекут
+        this.nodeId = nodeId.isBlank() ? ManagementFactory.getRuntimeMXBean().getName() : nodeId;
+        this.ttlMs = ttlMs;
+        this.heartbeatMs = heartbeatMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        worker = new Thread(this::run, "lease-heartbeat");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Отдаёт аренды узла сразу, не дожидаясь их истечения.
+     */
+    @PreDestroy
+    public void stop() {
+        worker.interrupt();
+        try {
+            transactionTemplate.executeWithoutResult(status -> leaseRepository.expireOwnedBy(nodeId, LocalDateTime.now()));
+        } catch (Exception e) {
+            logger.warn("Не удалось освободить аренды узла {}: {}", nodeId, e.getMessage());
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Берёт аренду, создавая строку, если её ещё нет.
+     *
+     * @param onLost вызывается из потока продления, если аренду отобрали или остановили; может быть null
+     */
+    public boolean tryAcquire(String name, Runnable onLost) {
+        return acquire(name, onLost, true);
+    }
+
+    /**
+     * Берёт аренду только из существующей строки: ждущую, просроченную или уже свою.
+     */
+    public boolean claim(String name, Runnable onLost) {
+        return acquire(name, onLost, false);
+    }
+
+    public void release(String name) {
+        held.remove(name);
+        transactionTemplate.executeWithoutResult(status -> leaseRepository.release(name, nodeId));
+    }
+
+    public boolean isHeld(String name) {
+        return held.containsKey(name);
+    }
+
+    /**
+     * Продлевает свою аренду в текущей транзакции. Строка аренды остаётся заблокированной
+     * до коммита, поэтому другой узел не заберёт аренду между проверкой и записью,
+     * которую можно делать только её держателю.
+     *
+     * @return false, если аренду забрал другой узел или её остановили
+     */
+    public boolean confirm(String name) {
+        LocalDateTime expires = LocalDateTime.now().plusNanos(ttlMs * 1_000_000);
+        return held.containsKey(name) && leaseRepository.renew(name, nodeId, expires) > 0;
+    }
+
+    /**
+     * @return true, если аренда этого узла остановлена по всему кластеру
+     */
+    public boolean isStopRequested(String name) {
+        return leaseRepository.findById(name)
+                .map(lease -> nodeId.equals(lease.getOwner()) && lease.isStopRequested())
+                .orElse(false);
+    }
+
+    /**
+     * @return true, если аренду держит какой-то узел или она ждёт, пока её заберут
+     */
+    public boolean isActive(String name) {
+        LocalDateTime now = LocalDateTime.now();
+        return leaseRepository.findById(name)
+                .map(lease -> (lease.getOwner() == null && !lease.isStopRequested())
+                        || (lease.getExpiresAt() != null && !lease.getExpiresAt().isBefore(now)))
+                .orElse(false);
+    }
+
+    public boolean hasActive(String prefix) {
+        return leaseRepository.countActive(prefix, LocalDateTime.now()) > 0;
+    }
+
+    public List<IndexingLease> findLeases(String prefix) {
+        return leaseRepository.findByNameStartingWithOrderByName(prefix);
+    }
+
+    public int activeNodes() {
+        return (int) Math.max(1, leaseRepository.countHeld(NODE, LocalDateTime.now()));
+    }
+
+    /**
+     * Заводит ждущие аренды на всю работу одного вида. Старые строки этого вида, уже никем
+     * не занятые, удаляются.
+     *
+     * @return false, если работа этого вида уже идёт где-то в кластере
+     */
+    public boolean createPending(String prefix, List<String> names) {
+        try {
+            return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                if (leaseRepository.countActive(prefix, LocalDateTime.now()) > 0) {
+                    return false;
+                }
+                leaseRepository.deleteByPrefix(prefix);
+                for (String name : names) {
+                    leaseRepository.insert(name, null, null);
+                }
+                return true;
+            }));
+        } catch (DataIntegrityViolationException e) {
+            // Другой узел завёл те же строки одновременно с нами
+            return false;
+        }
+    }
+
+    /**
+     * Останавливает работу вида prefix на всех узлах: ждущие аренды удаляются, а занятые
+     * владельцы не смогут продлить и прервут при следующем продлении.
+     */
+    public void requestStop(String prefix) {
+        transactionTemplate.executeWithoutResult(status -> {
+            leaseRepository.deleteUnclaimed(prefix);
+            leaseRepository.requestStop(prefix);
+        });
+    }
+
+    private boolean acquire(String name, Runnable onLost, boolean create) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expires = now.plusNanos(ttlMs * 1_000_000);
+        try {
+            boolean acquired = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                if (leaseRepository.claim(name, nodeId, now, expires) > 0) {
+                    return true;
+                }
+                return create && !leaseRepository.existsById(name) && leaseRepository.insert(name, nodeId, expires) > 0;
+            }));
+            if (acquired) {
+                held.put(name, onLost != null ? onLost : () -> { });
+            }
+            return acquired;
+        } catch (DataIntegrityViolationException e) {
+            return false;
+        }
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                heartbeat();
+                Thread.sleep(heartbeatMs);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                logger.warn("Ошибка продления аренд узла {}: {}", nodeId, e.getMessage());
+                try {
+                    Thread.sleep(heartbeatMs);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void heartbeat() {
+        // Строка узла нужна другим узлам, чтобы делить сайты поровну
+        if (!isHeld(NODE + nodeId)) {
+            tryAcquire(NODE + nodeId, null);
+        }
+        LocalDateTime expires = LocalDateTime.now().plusNanos(ttlMs * 1_000_000);
+        for (Map.Entry<String, Runnable> lease : held.entrySet()) {
+            Integer renewed = transactionTemplate.execute(status ->
+                    leaseRepository.renew(lease.getKey(), nodeId, expires));
+            if (renewed == null || renewed == 0) {
+                logger.warn("Узел {} потерял аренду {}", nodeId, lease.getKey());
+                held.remove(lease.getKey());
+                lease.getValue().run();
+            }
+        }
+    }
+}
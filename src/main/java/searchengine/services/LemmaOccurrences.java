@@ -0,0 +1,37 @@
+package searchengine.services;
+
+import java.util.Arrays;
+
+/**
+ * Вхождения одной леммы в текст: смещение первого вхождения в символах
+ * и порядковые номера слов, на которых лемма встречается.
+ */
+public class LemmaOccurrences {
+
+    private final int firstOffset;
+    private int[] positions = new int[4];
+    private int count;
+
+    public LemmaOccurrences(int firstOffset) {
+        this.firstOffset = firstOffset;
+    }
+
+    void addPosition(int position) {
+        if (count == positions.length) {
+            positions = Arrays.copyOf(positions, count * 2);
+        }
+        positions[count++] = position;
+    }
+
+    public int getFirstOffset() {
+        return firstOffset;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int[] getPositions() {
+        return Arrays.copyOf(positions, count);
+    }
+}
@@ -5,20 +5,85 @@ import searchengine.model.Lemma;
 import searchengine.model.Site;
 import searchengine.repository.LemmaRepository;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 @Service
 public class LemmaService {
 
+    // Размер списка IN при выборке лемм пакета
+    private static final int LOOKUP_CHUNK = 1000;
+
     private final LemmaRepository lemmaRepository;
+    private final SuggestionService suggestionService;
+    private final SiteCounters siteCounters;
 
-    public LemmaService(LemmaRepository lemmaRepository) {
+    public LemmaService(LemmaRepository lemmaRepository,
+                        SuggestionService suggestionService,
+                        SiteCounters siteCounters) {
         this.lemmaRepository = lemmaRepository;
+        this.suggestionService = suggestionService;
+        this.siteCounters = siteCounters;
     }
 
     public Lemma getOrCreateLemma(String lemmaText, Site site) {
-        return lemmaRepository.findByLemma(lemmaText).orElseGet(()
+        return lemmaRepository.findBySiteAndLemma(site, lemmaText).orElseGet(()
                 -> createLemma(lemmaText, site));
     }
 
+    /**
+     * Применяет накопленные за пакет изменения частот лемм сайта: одна выборка на пакет
+     * вместо запроса на каждую пару страница–лемма. Возвращает оставшиеся леммы по тексту.
+     */
+    public Map<String, Lemma> applyFrequencyDeltas(Site site, Map<String, Integer> deltas) {
+        Map<String, Lemma> lemmas = new HashMap<>();
+        List<String> words = new ArrayList<>(deltas.keySet());
+        for (int from = 0; from < words.size(); from += LOOKUP_CHUNK) {
+            List<String> chunk = words.subList(from, Math.min(from + LOOKUP_CHUNK, words.size()));
+            for (Lemma lemma : lemmaRepository.findBySiteAndLemmaIn(site, chunk)) {
+                lemmas.put(lemma.getLemma(), lemma);
+            }
+        }
+
+        List<Lemma> changed = new ArrayList<>();
+        List<Lemma> removed = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : deltas.entrySet()) {
+            String word = entry.getKey();
+            int delta = entry.getValue();
+            if (delta == 0) {
+                continue;
+            }
+            Lemma lemma = lemmas.get(word);
+            if (lemma == null) {
+                if (delta < 0) {
+                    continue;
+                }
+                lemma = new Lemma();
+                lemma.setLemma(word);
+                lemma.setFrequency(delta);
+                lemma.setSite(site);
+                lemmas.put(word, lemma);
+                changed.add(lemma);
+                siteCounters.lemmaAdded(site.getId());
+            } else if (lemma.getFrequency() + delta <= 0) {
+                lemmas.remove(word);
+                removed.add(lemma);
+                siteCounters.lemmaRemoved(site.getId());
+            } else {
+                lemma.setFrequency(lemma.getFrequency() + delta);
+                changed.add(lemma);
+            }
+            // Словарь подсказок строится по действующим поколениям, новое попадёт в него при переключении
+            if (site.isLive()) {
+                suggestionService.onFrequencyChanged(word, delta);
+            }
+        }
+        lemmaRepository.deleteAllInBatch(removed);
+        lemmaRepository.saveAll(changed);
+        return lemmas;
+    }
 
     public void updateLemmaFrequencyForPage(Lemma lemma, int frequency) {
         lemma.setFrequency(lemma.getFrequency() + frequency);
@@ -35,6 +100,8 @@ public class LemmaService {
         lemma.setFrequency(1);
         lemma.setSite(site);
 
-        return lemmaRepository.save(lemma);
+        Lemma saved = lemmaRepository.save(lemma);
+        siteCounters.lemmaAdded(site.getId());
+        return saved;
     }
 }
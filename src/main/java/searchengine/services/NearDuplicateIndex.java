@@ -0,0 +1,194 @@
+package searchengine.services;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import searchengine.model.Site;
+import searchengine.repository.PageFingerprint;
+import searchengine.repository.PageRepository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Отпечатки SimHash страниц по сайтам для поиска почти одинаковых страниц.
+ * Отпечаток делится на app.duplicateMaxDistance + 1 блоков: если два отпечатка отличаются
+ * не больше чем в app.duplicateMaxDistance битах, хотя бы один блок у них совпадает целиком,
+ * поэтому сравниваются только отпечатки из тех же корзин, а не все страницы сайта.
+ * <p>
+ * Отпечаток считается по основному содержимому страницы: меню, шапка и подвал одинаковы
+ * на всех страницах сайта и у коротких статей перевешивают их собственный текст.
+ * <p>
+ * Отпечатки сайта загружаются из столбца page.simhash при первом обращении,
+ * новые добавляются после коммита записи страницы. Страницы, записанные другими узлами,
+ * подхватываются перечитыванием отпечатков сайта раз в app.duplicateIndexMaxAgeMs.
+ */
+@Component
+public class NearDuplicateIndex {
+
+    private final PageRepository pageRepository;
+    private final boolean enabled;
+    private final int maxDistance;
+    private final int minWords;
+    private final long maxAgeMs;
+    private final Map<Long, SiteFingerprints> sites = new ConcurrentHashMap<>();
+
+    public NearDuplicateIndex(PageRepository pageRepository,
+                              @Value("${app.duplicateDetection:true}") boolean enabled,
+                              @Value("${app.duplicateMaxDistance:3}") int maxDistance,
+                              @Value("${app.duplicateMinWords:50}") int minWords,
+                              @Value("${app.duplicateIndexMaxAgeMs:600000}") long maxAgeMs) {
+        this.pageRepository = pageRepository;
+        this.enabled = enabled;
+        this.maxDistance = Math.max(0, Math.min(maxDistance, 15));
+        this.minWords = minWords;
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    /**
+     * @return отпечаток основного содержимого или 0, если в нём меньше app.duplicateMinWords слов
+     * либо поиск дублей выключен
+     */
+    public long fingerprint(Document document) {
+        return enabled ? SimHash.fingerprint(mainText(document), minWords) : 0;
+    }
+
+    public boolean isNear(long a, long b) {
+        return a != 0 && b != 0 && SimHash.distance(a, b) <= maxDistance;
+    }
+
+    /**
+     * Ищет среди сохранённых страниц сайта почти такую же, как страница path.
+     * Сама страница path не учитывается, чтобы повторная загрузка не нашла саму себя.
+     *
+     * @return id канонической страницы или null
+     */
+    public Long findCanonical(Site site, String path, long fingerprint) {
+        if (fingerprint == 0) {
+            return null;
+        }
+        return forSite(site).find(fingerprint, SimHash.hash64(path));
+    }
+
+    public void add(Site site, Long pageId, String path, long fingerprint) {
+        TransactionHooks.afterCommit(() -> {
+            SiteFingerprints fingerprints = forSite(site);
+            if (fingerprint == 0) {
+                fingerprints.remove(pageId);
+            } else {
+                fingerprints.put(new Entry(pageId, fingerprint, SimHash.hash64(path)));
+            }
+        });
+    }
+
+    public void forget(Long siteId) {
+        TransactionHooks.afterCommit(() -> sites.remove(siteId));
+    }
+
+    // Загрузка идёт вне computeIfAbsent: запрос к БД под блокировкой корзины ConcurrentHashMap
+    // задержал бы обращения к другим сайтам. При гонке двух потоков остаётся первая загрузка
+    private SiteFingerprints forSite(Site site) {
+        SiteFingerprints fingerprints = sites.get(site.getId());
+        if (fingerprints != null && System.currentTimeMillis() - fingerprints.loadedAt < maxAgeMs) {
+            return fingerprints;
+        }
+        SiteFingerprints loaded = new SiteFingerprints();
+        for (PageFingerprint page : pageRepository.findFingerprints(site)) {
+            loaded.put(new Entry(page.getId(), page.getSimhash(), SimHash.hash64(page.getPath())));
+        }
+        if (fingerprints == null) {
+            fingerprints = sites.putIfAbsent(site.getId(), loaded);
+            return fingerprints != null ? fingerprints : loaded;
+        }
+        return sites.replace(site.getId(), fingerprints, loaded) ? loaded : sites.getOrDefault(site.getId(), loaded);
+    }
+
+    // Основное содержимое по разметке: main или единственный article (несколько article — это
+    // обычно лента анонсов), иначе тело без навигации, шапки и подвала
+    private static String mainText(Document document) {
+        Element main = document.selectFirst("main, [role=main]");
+        if (main == null) {
+            Elements articles = document.select("article");
+            main = articles.size() == 1 ? articles.first() : null;
+        }
+        if (main != null) {
+            return main.text();
+        }
+        Element body = document.body();
+        if (body == null) {
+            return document.text();
+        }
+        Element content = body.clone();
+        content.select("nav, header, footer, aside, form, [role=navigation], [role=banner], [role=contentinfo]")
+                .remove();
+        return content.text();
+    }
+
+    private record Entry(Long pageId, long fingerprint, long pathHash) {
+    }
+
+    private class SiteFingerprints {
+
+        private final List<Map<Long, List<Entry>>> blocks = new ArrayList<>();
+        private final Map<Long, Entry> byPage = new HashMap<>();
+        private final long loadedAt = System.currentTimeMillis();
+
+        SiteFingerprints() {
+            for (int i = 0; i <= maxDistance; i++) {
+                blocks.add(new HashMap<>());
+            }
+        }
+
+        synchronized Long find(long fingerprint, long pathHash) {
+            for (int i = 0; i < blocks.size(); i++) {
+                List<Entry> bucket = blocks.get(i).get(block(fingerprint, i));
+                if (bucket == null) {
+                    continue;
+                }
+                for (Entry entry : bucket) {
+                    if (entry.pathHash() != pathHash && isNear(entry.fingerprint(), fingerprint)) {
+                        return entry.pageId();
+                    }
+                }
+            }
+            return null;
+        }
+
+        synchronized void put(Entry entry) {
+            remove(entry.pageId());
+            byPage.put(entry.pageId(), entry);
+            for (int i = 0; i < blocks.size(); i++) {
+                blocks.get(i).computeIfAbsent(block(entry.fingerprint(), i), key -> new ArrayList<>()).add(entry);
+            }
+        }
+
+        synchronized void remove(Long pageId) {
+            Entry old = byPage.remove(pageId);
+            if (old == null) {
+                return;
+            }
+            for (int i = 0; i < blocks.size(); i++) {
+                long key = block(old.fingerprint(), i);
+                List<Entry> bucket = blocks.get(i).get(key);
+                if (bucket != null) {
+                    bucket.remove(old);
+                    if (bucket.isEmpty()) {
+                        blocks.get(i).remove(key);
+                    }
+                }
+            }
+        }
+
+        private long block(long fingerprint, int index) {
+            int from = index * 64 / blocks.size();
+            int to = (index + 1) * 64 / blocks.size();
+            long mask = to - from == 64 ? -1L : (1L << (to - from)) - 1;
+            return (fingerprint >>> from) & mask;
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package searchengine.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.model.PageLinks;
+import searchengine.model.PageScore;
+import searchengine.model.Site;
+import searchengine.model.SiteStatus;
+import searchengine.repository.AliasRef;
+import searchengine.repository.PageAliasRepository;
+import searchengine.repository.PageLinksRepository;
+import searchengine.repository.PageRef;
+import searchengine.repository.PageRepository;
+import searchengine.repository.PageScoreRepository;
+import searchengine.repository.SiteRepository;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+/**
+ * Статическая важность страниц по графу ссылок внутри сайта. Граф собирается из page_links
+ * в массивы входящих рёбер (CSR), PageRank считается степенным методом, каждая итерация —
+ * параллельно по страницам в пуле из app.pageRankThreads потоков. Ссылки на псевдонимы
+ * засчитываются их канонической странице.
+ * <p>
+ * Пересчёт идёт после индексации сайта и раз в app.pageRankIntervalMs — для страниц,
+ * добавленных повторным обходом. Плановый пересчёт всех сайтов выполняется в своём потоке,
+ * чтобы не занимать общий поток @Scheduled.
+ */
+@Service
+public class PageRankService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PageRankService.class);
+
+    private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private final PageAliasRepository pageAliasRepository;
+    private final PageLinksRepository pageLinksRepository;
+    private final PageScoreRepository pageScoreRepository;
+    private final StaticScores staticScores;
+    private final IndexGenerations indexGenerations;
+    private final TransactionTemplate transactionTemplate;
+    private final LeaseService leaseService;
+    private final ForkJoinPool pool;
+    private final ExecutorService scheduled = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "pagerank");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Плановый пересчёт поставлен в очередь или выполняется
+    private final AtomicBoolean ranking = new AtomicBoolean();
+    private final double damping;
+    private final int maxIterations;
+    private final double tolerance;
+    private final int chunkSize;
+
+    public PageRankService(SiteRepository siteRepository,
+                           PageRepository pageRepository,
+                           PageAliasRepository pageAliasRepository,
+                           PageLinksRepository pageLinksRepository,
+                           PageScoreRepository pageScoreRepository,
+                           StaticScores staticScores,
+                           IndexGenerations indexGenerations,
+                           TransactionTemplate transactionTemplate,
+                           LeaseService leaseService,
+                           @Value("${app.pageRankThreads:4}") int threads,
+                           @Value("${app.pageRankDamping:0.85}") double damping,
+                           @Value("${app.pageRankMaxIterations:50}") int maxIterations,
+                           @Value("${app.pageRankTolerance:1.0E-6}") double tolerance,
+                           @Value("${app.resetChunkSize:1000}") int chunkSize) {
+        this.siteRepository = siteRepository;
+        this.pageRepository = pageRepository;
+        this.pageAliasRepository = pageAliasRepository;
+        this.pageLinksRepository = pageLinksRepository;
+        this.pageScoreRepository = pageScoreRepository;
+        this.staticScores = staticScores;
+        this.indexGenerations = indexGenerations;
+        this.transactionTemplate = transactionTemplate;
+        this.leaseService = leaseService;
+        this.pool = new ForkJoinPool(Math.max(1, threads));
+        this.damping = damping;
+        this.maxIterations = maxIterations;
+        this.tolerance = tolerance;
+        this.chunkSize = chunkSize;
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduled.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    /**
+     * Ставит пересчёт всех сайтов в очередь, если предыдущий ещё не закончился — пропускает.
+     */
+    @Scheduled(initialDelayString = "${app.pageRankIntervalMs:3600000}",
+            fixedDelayString = "${app.pageRankIntervalMs:3600000}")
+    public void scheduleRankAll() {
+        if (!ranking.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            scheduled.execute(() -> {
+                try {
+                    rankAll();
+                } finally {
+                    ranking.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            ranking.set(false);
+        }
+    }
+
+    public void rankAll() {
+        for (Site site : siteRepository.findByLiveTrue()) {
+            // При нескольких узлах сайт пересчитывает один из них
+            String lease = "pagerank:" + site.getUrl();
+            if (site.getStatus() != SiteStatus.INDEXED || !leaseService.tryAcquire(lease, null)) {
+                continue;
+            }
+            try {
+                rankSite(site);
+            } finally {
+                leaseService.release(lease);
+            }
+        }
+    }
+
+    /**
+     * Пересчитывает оценки страниц сайта. Ошибки только логируются: без оценок поиск работает как раньше.
+     */
+    public void rankSite(Site site) {
+        long started = System.currentTimeMillis();
+        try {
+            LinkGraph graph = loadGraph(site);
+            if (graph.size() == 0) {
+                return;
+            }
+            float[] scores = rank(graph);
+            saveScores(graph.pageIds, scores);
+            staticScores.update(site.getId(), graph.pageIds, scores);
+            indexGenerations.bump(site.getId());
+            logger.info("PageRank сайта {}: страниц {}, ссылок {}, {} мс",
+                    site.getUrl(), graph.size(), graph.sources.length, System.currentTimeMillis() - started);
+        } catch (Exception e) {
+            logger.warn("Не удалось посчитать PageRank сайта {}: {}", site.getUrl(), e.getMessage(), e);
+        }
+    }
+
+    private LinkGraph loadGraph(Site site) {
+        List<PageRef> pages = new ArrayList<>(pageRepository.findRefsBySite(site));
+        pages.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+        long[] pageIds = new long[pages.size()];
+        Map<String, Integer> byPath = new HashMap<>(pages.size() * 2);
+        for (int i = 0; i < pages.size(); i++) {
+            pageIds[i] = pages.get(i).getId();
+            byPath.put(pages.get(i).getPath(), i);
+        }
+        for (AliasRef alias : pageAliasRepository.findRefsBySite(site)) {
+            int canonical = Arrays.binarySearch(pageIds, alias.getCanonicalId());
+            if (canonical >= 0) {
+                byPath.putIfAbsent(alias.getPath(), canonical);
+            }
+        }
+
+        EdgeList edges = new EdgeList();
+        // seenFrom[to] == from: ребро from -> to уже добавлено
+        int[] seenFrom = new int[pageIds.length];
+        Arrays.fill(seenFrom, -1);
+        long after = 0;
+        while (true) {
+            List<PageLinks> chunk = pageLinksRepository.findBySiteAfter(site, after, PageRequest.of(0, chunkSize));
+            if (chunk.isEmpty()) {
+                break;
+            }
+            for (PageLinks links : chunk) {
+                int from = Arrays.binarySearch(pageIds, links.getPageId());
+                if (from < 0 || links.getTargets().isEmpty()) {
+                    continue;
+                }
+                for (String path : links.getTargets().split("\n")) {
+                    Integer to = byPath.get(path);
+                    // Несколько ссылок на одну страницу (в том числе через псевдонимы) считаются одной
+                    if (to != null && to != from && seenFrom[to] != from) {
+                        seenFrom[to] = from;
+                        edges.add(from, to);
+                    }
+                }
+            }
+            after = chunk.get(chunk.size() - 1).getPageId();
+        }
+        return new LinkGraph(pageIds, edges);
+    }
+
+    float[] rank(LinkGraph graph) throws InterruptedException, ExecutionException {
+        int n = graph.size();
+        double[] rank = new double[n];
+        double[] next = new double[n];
+        double[] contribution = new double[n];
+        Arrays.fill(rank, 1.0 / n);
+        int iteration = 0;
+        double delta = Double.MAX_VALUE;
+        while (iteration < maxIterations && delta > tolerance) {
+            // Вес страниц без исходящих ссылок распределяется по всем страницам поровну
+            double dangling = 0;
+            for (int page = 0; page < n; page++) {
+                if (graph.outDegree[page] == 0) {
+                    dangling += rank[page];
+                    contribution[page] = 0;
+                } else {
+                    contribution[page] = rank[page] / graph.outDegree[page];
+                }
+            }
+            double base = (1 - damping) / n + damping * dangling / n;
+            double[] current = rank;
+            double[] updated = next;
+            delta = pool.submit(() -> IntStream.range(0, n).parallel().mapToDouble(page -> {
+                double sum = 0;
+                for (int k = graph.offsets[page]; k < graph.offsets[page + 1]; k++) {
+                    sum += contribution[graph.sources[k]];
+                }
+                updated[page] = base + damping * sum;
+                return Math.abs(updated[page] - current[page]);
+            }).sum()).get();
+            next = rank;
+            rank = updated;
+            iteration++;
+        }
+        logger.debug("PageRank сошёлся за {} итераций, невязка {}", iteration, delta);
+
+        float[] scores = new float[n];
+        for (int page = 0; page < n; page++) {
+            scores[page] = (float) rank[page];
+        }
+        return scores;
+    }
+
+    private void saveScores(long[] pageIds, float[] scores) {
+        for (int from = 0; from < pageIds.length; from += chunkSize) {
+            int start = from;
+            int end = Math.min(from + chunkSize, pageIds.length);
+            transactionTemplate.executeWithoutResult(status -> {
+                List<Long> ids = new ArrayList<>(end - start);
+                List<PageScore> chunk = new ArrayList<>(end - start);
+                for (int i = start; i < end; i++) {
+                    ids.add(pageIds[i]);
+                    chunk.add(new PageScore(null, pageRepository.getReferenceById(pageIds[i]), scores[i]));
+                }
+                pageScoreRepository.deleteByPageIdIn(ids);
+                pageScoreRepository.saveAll(chunk);
+            });
+        }
+    }
+
+    static class EdgeList {
+        private int[] from = new int[1024];
+        private int[] to = new int[1024];
+        private int size;
+
+        void add(int source, int target) {
+            if (size == from.length) {
+                from = Arrays.copyOf(from, size * 2);
+                to = Arrays.copyOf(to, size * 2);
+            }
+            from[size] = source;
+            to[size] = target;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Граф в формате CSR по входящим рёбрам: источники рёбер, входящих в страницу i,
+     * лежат в sources[offsets[i]..offsets[i + 1]).
+     */
+    static class LinkGraph {
+        private final long[] pageIds;
+        private final int[] outDegree;
+        private final int[] offsets;
+        private final int[] sources;
+
+        LinkGraph(long[] pageIds, EdgeList edges) {
+            int n = pageIds.length;
+            this.pageIds = pageIds;
+            this.outDegree = new int[n];
+            this.offsets = new int[n + 1];
+            this.sources = new int[edges.size()];
+            for (int i = 0; i < edges.size(); i++) {
+                outDegree[edges.from[i]]++;
+                offsets[edges.to[i] + 1]++;
+            }
+            for (int i = 0; i < n; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            int[] fill = Arrays.copyOf(offsets, n);
+            for (int i = 0; i < edges.size(); i++) {
+                sources[fill[edges.to[i]]++] = edges.from[i];
+            }
+        }
+
+        int size() {
+            return pageIds.length;
+        }
+    }
+}
@@ -1,17 +1,41 @@
 package searchengine.services;
 
+import io.micrometer.core.instrument.Timer;
 import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import searchengine.model.Index;
 import searchengine.model.Lemma;
 import searchengine.model.Page;
+import searchengine.model.PageAlias;
+import searchengine.model.PageContent;
+import searchengine.model.PageLinks;
+import searchengine.model.PageRefresh;
 import searchengine.model.Site;
+import searchengine.repository.IndexRepository;
+import searchengine.repository.PageAliasRepository;
+import searchengine.repository.PageContentRepository;
+import searchengine.repository.PageLinksRepository;
+import searchengine.repository.PageRef;
+import searchengine.repository.PageRefreshRepository;
 import searchengine.repository.PageRepository;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class PageService {
@@ -20,90 +44,283 @@ public class PageService {
 
     private final PageRepository pageRepository;
     private final LemmaService lemmaService;
-    private final SiteService siteService;
+    private final IndexRepository indexRepository;
+    private final PageContentRepository pageContentRepository;
+    private final PageRefreshRepository pageRefreshRepository;
+    private final PageAliasRepository pageAliasRepository;
+    private final PageLinksRepository pageLinksRepository;
+    private final RefreshPolicy refreshPolicy;
+    private final NearDuplicateIndex nearDuplicates;
+    private final TextProcessingService textProcessingService;
+    private final IndexGenerations indexGenerations;
+    private final SiteCounters siteCounters;
+    private final IndexingMetrics indexingMetrics;
+
+    // Без исходного HTML в БД остаются только текст и заголовок, по которым работает поиск
+    @Value("${app.storeHtml:true}")
+    private boolean storeHtml;
 
     @Autowired
-    public PageService(PageRepository pageRepository, LemmaService lemmaService, SiteService siteService) {
+    public PageService(PageRepository pageRepository,
+                       LemmaService lemmaService,
+                       IndexRepository indexRepository,
+                       PageContentRepository pageContentRepository,
+                       PageRefreshRepository pageRefreshRepository,
+                       PageAliasRepository pageAliasRepository,
+                       PageLinksRepository pageLinksRepository,
+                       RefreshPolicy refreshPolicy,
+                       NearDuplicateIndex nearDuplicates,
+                       TextProcessingService textProcessingService,
+                       IndexGenerations indexGenerations,
+                       SiteCounters siteCounters,
+                       IndexingMetrics indexingMetrics) {
         this.pageRepository = pageRepository;
         this.lemmaService = lemmaService;
-        this.siteService = siteService;
+        this.indexRepository = indexRepository;
+        this.pageContentRepository = pageContentRepository;
+        this.pageRefreshRepository = pageRefreshRepository;
+        this.pageAliasRepository = pageAliasRepository;
+        this.pageLinksRepository = pageLinksRepository;
+        this.refreshPolicy = refreshPolicy;
+        this.nearDuplicates = nearDuplicates;
+        this.textProcessingService = textProcessingService;
+        this.indexGenerations = indexGenerations;
+        this.siteCounters = siteCounters;
+        this.indexingMetrics = indexingMetrics;
     }
 
+    /**
+     * Сохраняет страницу вместе с её текстом без разметки, леммами и записями search_index.
+     * Для каждой леммы запоминается смещение первого вхождения в текст, чтобы сниппет
+     * можно было построить без повторного разбора HTML, и позиции слов для поиска фраз.
+     */
     @Transactional
-    public Page createOrUpdatePage(Site site, String siteUrl, String path, int code, String content) throws IndexingException {
-        try {
-            Optional<Page> existingPageOptional = pageRepository.findBySiteAndPath(site, path);
+    public Page indexPageContent(Site site, String path, int code, String html) throws IndexingException {
+        return savePreparedPage(preparePage(site, path, code, Jsoup.parse(html)));
+    }
 
-            if (existingPageOptional.isPresent()) {
-                Page page = existingPageOptional.get();
-                return updatePageFields(page, code, content);
-            } else {
-                // Создаем новую страницу
-                return createNewPage(site, path, code, content);
-            }
-        } catch (Exception e) {
-            logger.error("Error while creating or updating page", e);
-            throw new IndexingException("Error while creating or updating page", e);
+    /**
+     * Процессорная часть индексации: текст, заголовок, отпечаток и вхождения лемм. К БД
+     * обращается только при первой загрузке отпечатков сайта, поэтому может выполняться
+     * в пуле разбора параллельно с записью других страниц. Для почти полного дубля уже
+     * сохранённой страницы леммы не собираются: он будет записан как псевдоним.
+     */
+    public PreparedPage preparePage(Site site, String path, int code, Document document) {
+        String relativePath = UrlNormalizer.relativePath(site.getUrl(), path);
+        String text = indexingMetrics.textExtractionTimer().record(() -> textProcessingService.extractText(document));
+        Map<String, LemmaOccurrences> lemmas = Collections.emptyMap();
+        long fingerprint = code < 400 ? nearDuplicates.fingerprint(document) : 0;
+        Long duplicateOf = nearDuplicates.findCanonical(site, relativePath, fingerprint);
+        if (code < 400 && duplicateOf == null) {
+            lemmas = indexingMetrics.lemmatizationTimer()
+                    .record(() -> textProcessingService.collectOccurrences(text));
+            indexingMetrics.lemmasPerPage().record(lemmas.size());
         }
+        return new PreparedPage(site, relativePath, code, document.html(), textProcessingService.extractTitle(document), text, lemmas,
+                code < 400 ? extractLinks(site, relativePath, document) : List.of(), fingerprint, duplicateOf);
     }
 
-
-    public void updatePageLemmaRelation(Page page, Lemma lemma, int frequency) throws IndexingException {
-        try {
-            // Обновляем частоту леммы для страницы
-            lemmaService.updateLemmaFrequencyForPage(lemma, frequency);
-        } catch (Exception e) {
-            logger.error("Error while updating page-lemma relation", e);
-            throw new IndexingException("Error while updating page-lemma relation", e);
+    private static List<String> extractLinks(Site site, String path, Document document) {
+        Set<String> links = new LinkedHashSet<>();
+        for (Element link : document.select("a[href]")) {
+            String href = UrlNormalizer.absoluteUrl(site.getUrl(), link.attr("href"));
+            if (href != null && href.startsWith(site.getUrl())) {
+                links.add(UrlNormalizer.relativePath(site.getUrl(), href));
+            }
         }
+        links.remove(path);
+        return new ArrayList<>(links);
     }
 
     @Transactional
-    public Page createNewPage(Site site, String fullPath, int code, String content) throws IndexingException {
+    public Page savePreparedPage(PreparedPage prepared) throws IndexingException {
         try {
-            Page newPage = new Page();
-            newPage.setSite(site);
-            newPage.setPath(fullPath);
-            newPage.setCode(code);
-            newPage.setContent(content);
-            return pageRepository.save(newPage);
+            return savePreparedPages(List.of(prepared)).get(0);
         } catch (Exception e) {
-            logger.error("Error while creating a new page", e);
-            throw new IndexingException("Error while creating a new page", e);
+            logger.error("Error while indexing page content", e);
+            throw new IndexingException("Error while indexing page content", e);
         }
     }
 
+    /**
+     * Записывает пакет страниц одной транзакцией. Изменения частот лемм сначала
+     * суммируются по всем страницам пакета, а затем применяются одним проходом на сайт.
+     * Если страница попала в пакет дважды, записывается последняя версия.
+     * <p>
+     * Существующие страницы не загружаются: по проекции берётся id, а поля, HTML и текст
+     * обновляются запросами, так что старое содержимое не читается из БД.
+     * <p>
+     * Новый адрес с почти тем же текстом, что у уже сохранённой страницы или у страницы
+     * этого же пакета, записывается в page_alias; для него возвращается каноническая страница.
+     */
     @Transactional
-    public Page updatePageFields(Page page, int newCode, String newContent) throws IndexingException {
-        try {
-            page.setCode(newCode);
-            page.setContent(newContent);
-            return pageRepository.save(page);
-        } catch (Exception e) {
-            logger.error("Error while updating page fields", e);
-            throw new IndexingException("Error while updating page fields", e);
+    public List<Page> savePreparedPages(List<PreparedPage> batch) {
+        Map<String, PreparedPage> latest = new LinkedHashMap<>();
+        for (PreparedPage prepared : batch) {
+            latest.put(prepared.getSite().getId() + ":" + prepared.getPath(), prepared);
         }
-    }
 
-    @Transactional
-    public Page createPage(String url, String htmlContent) {
-        // Предположим, что у нас есть объект site и мы его получили
-        Site site = siteService.getSiteByUrl(url);
-        if (site == null) {
-            // Обработка отсутствия сайта
-            return null;
+        Map<Long, Site> sites = new LinkedHashMap<>();
+        Map<Long, Map<String, Integer>> deltas = new HashMap<>();
+        List<Page> pages = new ArrayList<>(latest.size());
+        List<SavedPage> saved = new ArrayList<>(latest.size());
+        List<PageContent> newContents = new ArrayList<>();
+        List<PageLinks> newLinks = new ArrayList<>();
+        Timer.Sample pageWrite = Timer.start();
+        for (PreparedPage prepared : latest.values()) {
+            Site site = prepared.getSite();
+            sites.putIfAbsent(site.getId(), site);
+            Map<String, Integer> siteDeltas = deltas.computeIfAbsent(site.getId(), id -> new HashMap<>());
+            String content = storeHtml ? prepared.getHtml() : "";
+            Long simhash = prepared.getFingerprint() == 0 ? null : prepared.getFingerprint();
+
+            Optional<PageRef> existing = pageRepository.findRefBySiteAndPath(site, prepared.getPath());
+            if (existing.isEmpty()) {
+                Long canonical = findCanonical(prepared, saved);
+                if (canonical != null) {
+                    pages.add(saveAlias(site, prepared.getPath(), canonical));
+                    continue;
+                }
+            }
+
+            Map<String, LemmaOccurrences> lemmas = prepared.getLemmas();
+            if (prepared.getDuplicateOf() != null) {
+                // Дубль нашёлся при подготовке, но адрес уже сохранён как страница: она остаётся в индексе
+                lemmas = textProcessingService.collectOccurrences(prepared.getText());
+            }
+            Page page;
+            if (existing.isEmpty()) {
+                page = new Page();
+                page.setSite(site);
+                page.setPath(prepared.getPath());
+                page.setCode(prepared.getCode());
+                page.setTitle(prepared.getTitle());
+                page.setSimhash(simhash);
+                page = pageRepository.save(page);
+                newContents.add(new PageContent(null, page, content, prepared.getText()));
+                newLinks.add(new PageLinks(null, page, String.join("\n", prepared.getLinks())));
+                // Адрес мог раньше быть псевдонимом другой страницы
+                pageAliasRepository.deleteBySiteAndPath(site, prepared.getPath());
+                siteCounters.pageAdded(site.getId());
+            } else {
+                Long pageId = existing.get().getId();
+                for (String lemma : indexRepository.findLemmasByPageId(pageId)) {
+                    siteDeltas.merge(lemma, -1, Integer::sum);
+                }
+                indexRepository.deleteByPageId(pageId);
+                pageRepository.updateFields(pageId, prepared.getCode(), prepared.getTitle(), simhash);
+                pageContentRepository.updateContent(pageId, content, prepared.getText());
+                page = pageRepository.getReferenceById(pageId);
+                String targets = String.join("\n", prepared.getLinks());
+                // Страницы, сохранённые до появления page_links, получают строку при первой перезаписи
+                if (pageLinksRepository.updateTargets(pageId, targets) == 0) {
+                    newLinks.add(new PageLinks(null, page, targets));
+                }
+            }
+            pages.add(page);
+            saved.add(new SavedPage(page, prepared, lemmas));
+            for (String lemma : lemmas.keySet()) {
+                siteDeltas.merge(lemma, 1, Integer::sum);
+            }
         }
+        pageContentRepository.saveAll(newContents);
+        pageLinksRepository.saveAll(newLinks);
+        pageWrite.stop(indexingMetrics.pageWriteTimer());
 
-        try {
-            // Создаем или обновляем страницу
-            return createOrUpdatePage(site, url, "path", 200, htmlContent);
-        } catch (IndexingException e) {
-            logger.error("Error while creating or updating page", e);
-            // Обработка ошибки индексации
-            return null;
+        Timer.Sample lemmaWrite = Timer.start();
+        Map<Long, Map<String, Lemma>> lemmas = new HashMap<>();
+        for (Site site : sites.values()) {
+            lemmas.put(site.getId(), lemmaService.applyFrequencyDeltas(site, deltas.get(site.getId())));
+        }
+        List<Index> indexes = new ArrayList<>();
+        for (SavedPage page : saved) {
+            Map<String, Lemma> siteLemmas = lemmas.get(page.prepared().getSite().getId());
+            for (Map.Entry<String, LemmaOccurrences> entry : page.lemmas().entrySet()) {
+                LemmaOccurrences occurrences = entry.getValue();
+                Index index = new Index();
+                index.setPage(page.page());
+                index.setLemma(siteLemmas.get(entry.getKey()));
+                index.setRankValue(occurrences.getCount());
+                index.setFirstOffset(occurrences.getFirstOffset());
+                index.setPositions(PositionCodec.encode(occurrences.getPositions()));
+                indexes.add(index);
+            }
+            nearDuplicates.add(page.prepared().getSite(), page.page().getId(), page.prepared().getPath(),
+                    page.prepared().getFingerprint());
         }
+        indexRepository.saveAll(indexes);
+        lemmaWrite.stop(indexingMetrics.lemmaWriteTimer());
+        recordFetches(saved);
+        sites.keySet().forEach(indexGenerations::bump);
+        return pages;
     }
 
+    /**
+     * Каноническая страница для нового адреса: сохранённая ранее или записанная в этом же пакете.
+     */
+    private Long findCanonical(PreparedPage prepared, List<SavedPage> saved) {
+        long fingerprint = prepared.getFingerprint();
+        Long canonical = nearDuplicates.findCanonical(prepared.getSite(), prepared.getPath(), fingerprint);
+        if (canonical != null) {
+            return canonical;
+        }
+        for (SavedPage page : saved) {
+            if (page.prepared().getSite().getId().equals(prepared.getSite().getId())
+                    && nearDuplicates.isNear(page.prepared().getFingerprint(), fingerprint)) {
+                return page.page().getId();
+            }
+        }
+        return null;
+    }
 
+    private Page saveAlias(Site site, String path, Long canonicalId) {
+        Page canonical = pageRepository.getReferenceById(canonicalId);
+        PageAlias alias = pageAliasRepository.findBySiteAndPath(site, path)
+                .orElseGet(() -> new PageAlias(null, site, path, null));
+        alias.setCanonical(canonical);
+        pageAliasRepository.save(alias);
+        indexingMetrics.duplicatePages().increment();
+        return canonical;
+    }
 
+    /**
+     * Дополняет историю загрузок страниц пакета, по которой RecrawlScheduler
+     * назначает повторный обход. История читается одним запросом на пакет.
+     */
+    private void recordFetches(List<SavedPage> saved) {
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, PageRefresh> known = new HashMap<>();
+        List<Long> ids = saved.stream().map(page -> page.page().getId()).toList();
+        for (PageRefresh refresh : pageRefreshRepository.findAllById(ids)) {
+            known.put(refresh.getPageId(), refresh);
+        }
+        List<PageRefresh> refreshes = new ArrayList<>(saved.size());
+        for (SavedPage page : saved) {
+            PreparedPage fetched = page.prepared();
+            long hash = RefreshPolicy.contentHash(fetched.getText());
+            PageRefresh refresh = known.get(page.page().getId());
+            if (refresh == null) {
+                refresh = refreshPolicy.firstFetch(page.page(), hash, now);
+            } else {
+                refreshPolicy.observe(refresh, hash, now);
+            }
+            refresh.setEtag(fetched.getEtag());
+            refresh.setLastModified(fetched.getLastModified());
+            refreshes.add(refresh);
+        }
+        pageRefreshRepository.saveAll(refreshes);
+    }
+
+    public void updatePageLemmaRelation(Page page, Lemma lemma, int frequency) throws IndexingException {
+        try {
+            // Обновляем частоту леммы для страницы
+            lemmaService.updateLemmaFrequencyForPage(lemma, frequency);
+        } catch (Exception e) {
+            logger.error("Error while updating page-lemma relation", e);
+            throw new IndexingException("Error while updating page-lemma relation", e);
+        }
+    }
+
+    private record SavedPage(Page page, PreparedPage prepared, Map<String, LemmaOccurrences> lemmas) {
+    }
 }
@@ -0,0 +1,69 @@
+package searchengine.services;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Нормализованный поисковый запрос: все леммы и фразы, заданные в кавычках.
+ * Для каждого слова фразы хранится его сдвиг от первого слова фразы.
+ */
+class ParsedQuery {
+
+    private final Set<String> lemmas = new LinkedHashSet<>();
+    private final List<List<PhraseTerm>> phrases = new ArrayList<>();
+
+    static ParsedQuery parse(String query, TextProcessingService textProcessingService) {
+        ParsedQuery parsed = new ParsedQuery();
+        String[] segments = query.split("\"", -1);
+        for (int i = 0; i < segments.length; i++) {
+            List<String> words = textProcessingService.lemmatizeWords(segments[i]);
+            List<PhraseTerm> phrase = new ArrayList<>();
+            int phraseStart = -1;
+            for (int position = 0; position < words.size(); position++) {
+                String lemma = words.get(position);
+                if (lemma.isEmpty()) {
+                    continue;
+                }
+                parsed.lemmas.add(lemma);
+                if (phraseStart < 0) {
+                    phraseStart = position;
+                }
+                phrase.add(new PhraseTerm(lemma, position - phraseStart));
+            }
+            // Нечётные сегменты находятся внутри кавычек
+            if (i % 2 == 1 && phrase.size() > 1) {
+                parsed.phrases.add(phrase);
+            }
+        }
+        return parsed;
+    }
+
+    Set<String> getLemmas() {
+        return lemmas;
+    }
+
+    List<List<PhraseTerm>> getPhrases() {
+        return phrases;
+    }
+
+    boolean isEmpty() {
+        return lemmas.isEmpty();
+    }
+
+    String cacheKey() {
+        StringBuilder key = new StringBuilder(String.join(" ", new TreeSet<>(lemmas)));
+        for (List<PhraseTerm> phrase : phrases) {
+            key.append(" |");
+            for (PhraseTerm term : phrase) {
+                key.append(' ').append(term.lemma()).append('@').append(term.shift());
+            }
+        }
+        return key.toString();
+    }
+
+    record PhraseTerm(String lemma, int shift) {
+    }
+}
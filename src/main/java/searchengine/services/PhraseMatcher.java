@@ -0,0 +1,69 @@
+package searchengine.services;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Операции над позициями слов страницы: проверка фразы и поиск минимального окна,
+ * в котором встречаются все леммы запроса.
+ */
+final class PhraseMatcher {
+
+    private PhraseMatcher() {
+    }
+
+    /**
+     * Есть ли на странице позиция p, при которой каждое слово фразы стоит на p + сдвиг слова.
+     */
+    static boolean containsPhrase(List<ParsedQuery.PhraseTerm> phrase, Map<String, int[]> positions) {
+        int[] first = positions.get(phrase.get(0).lemma());
+        if (first == null) {
+            return false;
+        }
+        for (int start : first) {
+            boolean matches = true;
+            for (int i = 1; i < phrase.size() && matches; i++) {
+                ParsedQuery.PhraseTerm term = phrase.get(i);
+                int[] termPositions = positions.get(term.lemma());
+                matches = termPositions != null && Arrays.binarySearch(termPositions, start + term.shift()) >= 0;
+            }
+            if (matches) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Длина (в словах) кратчайшего отрезка текста, содержащего хотя бы одну позицию из каждого списка.
+     */
+    static int minimalSpan(Collection<int[]> positionLists) {
+        int[][] lists = positionLists.toArray(new int[0][]);
+        int[] cursors = new int[lists.length];
+        PriorityQueue<Integer> heap = new PriorityQueue<>(lists.length,
+                (a, b) -> Integer.compare(lists[a][cursors[a]], lists[b][cursors[b]]));
+
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < lists.length; i++) {
+            if (lists[i].length == 0) {
+                return Integer.MAX_VALUE;
+            }
+            heap.add(i);
+            max = Math.max(max, lists[i][0]);
+        }
+
+        int best = Integer.MAX_VALUE;
+        while (true) {
+            int minList = heap.poll();
+            best = Math.min(best, max - lists[minList][cursors[minList]] + 1);
+            if (++cursors[minList] == lists[minList].length) {
+                return best;
+            }
+            max = Math.max(max, lists[minList][cursors[minList]]);
+            heap.add(minList);
+        }
+    }
+}
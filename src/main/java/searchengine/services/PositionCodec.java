@@ -0,0 +1,52 @@
+package searchengine.services;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Кодирование возрастающих позиций слов: разности соседних позиций записываются
+ * как varint, поэтому типичная позиция занимает один-два байта.
+ */
+public final class PositionCodec {
+
+    private PositionCodec() {
+    }
+
+    public static byte[] encode(int[] positions) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(positions.length * 2);
+        int previous = 0;
+        for (int position : positions) {
+            int delta = position - previous;
+            previous = position;
+            while ((delta & ~0x7F) != 0) {
+                out.write((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            out.write(delta);
+        }
+        return out.toByteArray();
+    }
+
+    public static int[] decode(byte[] data) {
+        if (data == null) {
+            return new int[0];
+        }
+        int[] positions = new int[data.length];
+        int count = 0;
+        int previous = 0;
+        int i = 0;
+        while (i < data.length) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[i++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            previous += delta;
+            positions[count++] = previous;
+        }
+        return Arrays.copyOf(positions, count);
+    }
+}
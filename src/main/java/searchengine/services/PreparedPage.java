@@ -0,0 +1,38 @@
+package searchengine.services;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import searchengine.model.Site;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Страница, подготовленная к записи: путь, HTML, текст без разметки и вхождения лемм.
+ * Всё, что требует процессора, уже посчитано, осталось только сохранить в БД.
+ */
+@Getter
+@RequiredArgsConstructor
+public class PreparedPage {
+
+    private final Site site;
+    private final String path;
+    private final int code;
+    private final String html;
+    private final String title;
+    private final String text;
+    private final Map<String, LemmaOccurrences> lemmas;
+    // Пути страниц сайта, на которые ссылается страница, без повторов
+    private final List<String> links;
+    // SimHash текста, 0 — без отпечатка
+    private final long fingerprint;
+    // Каноническая страница, найденная при подготовке; леммы для такой страницы не собираются
+    private final Long duplicateOf;
+
+    // Валидаторы HTTP-кэша из ответа, если страница загружена повторным обходом
+    @Setter
+    private String etag;
+    @Setter
+    private String lastModified;
+}
@@ -0,0 +1,38 @@
+package searchengine.services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Страница в ранжированной выдаче: абсолютная релевантность и смещения лемм запроса для сниппета.
+ */
+class RankedPage {
+    private final Long pageId;
+    private final List<Integer> offsets = new ArrayList<>();
+    private float relevance;
+
+    RankedPage(Long pageId) {
+        this.pageId = pageId;
+    }
+
+    void addLemma(float rank, int firstOffset) {
+        relevance += rank;
+        offsets.add(firstOffset);
+    }
+
+    void boost(float factor) {
+        relevance *= factor;
+    }
+
+    Long getPageId() {
+        return pageId;
+    }
+
+    float getRelevance() {
+        return relevance;
+    }
+
+    List<Integer> getOffsets() {
+        return offsets;
+    }
+}
@@ -0,0 +1,283 @@
+package searchengine.services;
+
+import org.jsoup.Connection;
+import org.jsoup.HttpStatusException;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import searchengine.model.PageRefresh;
+import searchengine.model.Site;
+import searchengine.model.SiteCrawler;
+import searchengine.model.SiteStatus;
+import searchengine.repository.PageAliasRepository;
+import searchengine.repository.PageRefreshRepository;
+import searchengine.repository.PageRepository;
+import searchengine.repository.SiteRepository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Фоновый повторный обход проиндексированных сайтов. Раз в app.recrawlTickMs для каждого
+ * сайта загружаются страницы, срок которых подошёл (см. {@link RefreshPolicy}), но не больше
+ * app.recrawlPagesPerTick. Загрузка условная, и в индекс пишутся только изменившиеся
+ * страницы. Ссылки с изменившихся страниц на ещё не известные страницы сайта загружаются
+ * в том же бюджете — так в индекс попадают новые статьи с главных страниц.
+ * <p>
+ * Пока идёт полная индексация, повторный обход не выполняется. Сайт обходит только узел,
+ * взявший на него аренду.
+ */
+@Service
+public class RecrawlScheduler {
+
+    public static final String LEASE = "recrawl:";
+
+    private static final Logger logger = LoggerFactory.getLogger(RecrawlScheduler.class);
+
+    private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private final PageRefreshRepository pageRefreshRepository;
+    private final PageAliasRepository pageAliasRepository;
+    private final SiteCrawler siteCrawler;
+    private final PageService pageService;
+    private final BatchPageWriter batchPageWriter;
+    private final IndexingService indexingService;
+    private final RefreshPolicy refreshPolicy;
+    private final StaticScores staticScores;
+    private final LeaseService leaseService;
+    private final boolean enabled;
+    private final long tickMs;
+    private final int pagesPerTick;
+    private Thread worker;
+
+    public RecrawlScheduler(SiteRepository siteRepository,
+                            PageRepository pageRepository,
+                            PageRefreshRepository pageRefreshRepository,
+                            PageAliasRepository pageAliasRepository,
+                            SiteCrawler siteCrawler,
+                            PageService pageService,
+                            BatchPageWriter batchPageWriter,
+                            IndexingService indexingService,
+                            RefreshPolicy refreshPolicy,
+                            StaticScores staticScores,
+                            LeaseService leaseService,
+                            @Value("${app.recrawlEnabled:true}") boolean enabled,
+                            @Value("${app.recrawlTickMs:60000}") long tickMs,
+                            @Value("${app.recrawlPagesPerTick:20}") int pagesPerTick) {
+        this.siteRepository = siteRepository;
+        this.pageRepository = pageRepository;
+        this.pageRefreshRepository = pageRefreshRepository;
+        this.pageAliasRepository = pageAliasRepository;
+        this.siteCrawler = siteCrawler;
+        this.pageService = pageService;
+        this.batchPageWriter = batchPageWriter;
+        this.indexingService = indexingService;
+        this.refreshPolicy = refreshPolicy;
+        this.staticScores = staticScores;
+        this.leaseService = leaseService;
+        this.enabled = enabled;
+        this.tickMs = tickMs;
+        this.pagesPerTick = pagesPerTick;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        // Свой поток, а не @Scheduled: проход по сайту идёт с паузами между запросами
+        // и занял бы общий планировщик на всё это время
+        worker = new Thread(this::run, "recrawl");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(tickMs);
+                recrawlDue();
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                logger.warn("Ошибка повторного обхода: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    public void recrawlDue() throws InterruptedException {
+        for (Site site : siteRepository.findByLiveTrue()) {
+            if (indexingService.isIndexing()) {
+                return;
+            }
+            String lease = LEASE + site.getUrl();
+            if (site.getStatus() != SiteStatus.INDEXED || !leaseService.tryAcquire(lease, null)) {
+                continue;
+            }
+            try {
+                // Индексация или выгрузка снимка могли начаться, пока бралась аренда
+                if (indexingService.isIndexing()) {
+                    return;
+                }
+                recrawlSite(site);
+            } finally {
+                leaseService.release(lease);
+            }
+        }
+    }
+
+    private void recrawlSite(Site site) throws InterruptedException {
+        LocalDateTime now = LocalDateTime.now();
+        // Из вдвое большего окна просроченных страниц первыми берутся самые важные по PageRank
+        List<PageRefresh> due = new ArrayList<>(
+                pageRefreshRepository.findDue(site, now, PageRequest.of(0, pagesPerTick * 2)));
+        if (due.isEmpty()) {
+            return;
+        }
+        due.sort(Comparator.comparingDouble(
+                (PageRefresh refresh) -> staticScores.score(site, refresh.getPageId())).reversed());
+        due = due.subList(0, Math.min(pagesPerTick, due.size()));
+        List<PageRefresh> unchanged = new ArrayList<>();
+        Set<String> discovered = new LinkedHashSet<>();
+        int changed = 0;
+        for (PageRefresh refresh : due) {
+            checkInterrupted();
+            if (refresh(site, refresh, discovered)) {
+                changed++;
+            } else {
+                unchanged.add(refresh);
+            }
+        }
+        pageRefreshRepository.saveAll(unchanged);
+
+        int added = 0;
+        for (String path : discovered) {
+            if (due.size() + added >= pagesPerTick) {
+                break;
+            }
+            checkInterrupted();
+            if (fetchNew(site, path)) {
+                added++;
+            }
+        }
+        logger.info("Повторный обход {}: загружено {}, изменилось {}, новых страниц {}",
+                site.getUrl(), due.size(), changed, added);
+    }
+
+    // Паузы между запросами выдерживает CrawlRateController, здесь только проверка остановки
+    private static void checkInterrupted() throws InterruptedException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    /**
+     * @return true, если страница изменилась и передана на запись; историю такой страницы
+     * обновляет PageService, остальные сохраняются вызывающим
+     */
+    private boolean refresh(Site site, PageRefresh refresh, Set<String> discovered) {
+        String path = refresh.getPage().getPath();
+        String url = UrlNormalizer.absoluteUrl(site.getUrl(), path);
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            Connection.Response response = siteCrawler.fetchIfModified(url, refresh.getEtag(), refresh.getLastModified());
+            if (response.statusCode() == 304) {
+                refreshPolicy.observe(refresh, refresh.getContentHash(), now);
+                return false;
+            }
+            Document document = response.parse();
+            if (RefreshPolicy.contentHash(document.text()) == refresh.getContentHash()) {
+                refreshPolicy.observe(refresh, refresh.getContentHash(), now);
+                refresh.setEtag(response.header("ETag"));
+                refresh.setLastModified(response.header("Last-Modified"));
+                return false;
+            }
+            if (!write(site, path, response.statusCode(), document, response)) {
+                refreshPolicy.postpone(refresh, now);
+                return false;
+            }
+            collectLinks(site, document, discovered);
+            return true;
+        } catch (HttpStatusException e) {
+            // Страница удалена: запись с кодом ошибки убирает её леммы из индекса
+            boolean gone = e.getStatusCode() == 404 || e.getStatusCode() == 410;
+            if (gone && write(site, path, e.getStatusCode(), Jsoup.parse(""), null)) {
+                return true;
+            }
+            refreshPolicy.postpone(refresh, now);
+            return false;
+        } catch (SkippedContentException e) {
+            // Адрес по-прежнему не страница: загрузка без изменений, интервал растёт
+            refreshPolicy.observe(refresh, refresh.getContentHash(), now);
+            return false;
+        } catch (Exception e) {
+            logger.debug("Повторная загрузка {} не удалась: {}", url, e.getMessage());
+            refreshPolicy.postpone(refresh, now);
+            return false;
+        }
+    }
+
+    private boolean fetchNew(Site site, String path) {
+        String url = UrlNormalizer.absoluteUrl(site.getUrl(), path);
+        try {
+            Connection.Response response = siteCrawler.fetchIfModified(url, null, null);
+            return write(site, path, response.statusCode(), response.parse(), response);
+        } catch (SkippedContentException e) {
+            return write(site, path, e.getCode(), Jsoup.parse(""), null);
+        } catch (Exception e) {
+            logger.debug("Загрузка новой страницы {} не удалась: {}", url, e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean write(Site site, String path, int code, Document document, Connection.Response response) {
+        PreparedPage prepared = pageService.preparePage(site, path, code, document);
+        if (response != null) {
+            prepared.setEtag(response.header("ETag"));
+            prepared.setLastModified(response.header("Last-Modified"));
+        }
+        try {
+            batchPageWriter.submit(prepared).get();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            logger.warn("Не удалось записать страницу {}{}: {}", site.getUrl(), path, e.getCause().getMessage());
+            return false;
+        }
+    }
+
+    private void collectLinks(Site site, Document document, Set<String> discovered) {
+        for (Element link : document.select("a[href]")) {
+            String href = UrlNormalizer.absoluteUrl(site.getUrl(), link.attr("href"));
+            if (href == null || !href.startsWith(site.getUrl())) {
+                continue;
+            }
+            String path = UrlNormalizer.relativePath(site.getUrl(), href);
+            if (!discovered.contains(path) && pageRepository.findRefBySiteAndPath(site, path).isEmpty()
+                    && !pageAliasRepository.existsBySiteAndPath(site, path)) {
+                discovered.add(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package searchengine.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import searchengine.model.Page;
+import searchengine.model.PageRefresh;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Интервалы повторной загрузки страниц. По истории загрузок оценивается, как часто
+ * меняется страница, и следующая загрузка назначается примерно через то время,
+ * за которое ожидается одно изменение, в пределах app.recrawlMinIntervalMs–app.recrawlMaxIntervalMs.
+ */
+@Component
+public class RefreshPolicy {
+
+    // Вес прошлых наблюдений при каждой новой загрузке: около десятка последних загрузок
+    private static final double DECAY = 0.9;
+
+    private final long minIntervalSec;
+    private final long maxIntervalSec;
+    private final long initialIntervalSec;
+
+    public RefreshPolicy(@Value("${app.recrawlMinIntervalMs:300000}") long minIntervalMs,
+                         @Value("${app.recrawlMaxIntervalMs:2592000000}") long maxIntervalMs,
+                         @Value("${app.recrawlInitialIntervalMs:86400000}") long initialIntervalMs) {
+        this.minIntervalSec = Math.max(1, minIntervalMs / 1000);
+        this.maxIntervalSec = Math.max(minIntervalSec, maxIntervalMs / 1000);
+        this.initialIntervalSec = clamp(initialIntervalMs / 1000);
+    }
+
+    public PageRefresh firstFetch(Page page, long contentHash, LocalDateTime now) {
+        PageRefresh refresh = new PageRefresh();
+        refresh.setPage(page);
+        refresh.setContentHash(contentHash);
+        refresh.setLastFetched(now);
+        refresh.setNextFetch(now.plusSeconds(initialIntervalSec));
+        refresh.setFetches(0);
+        refresh.setChanges(0);
+        refresh.setMeanInterval(initialIntervalSec);
+        return refresh;
+    }
+
+    /**
+     * Учитывает очередную загрузку страницы и назначает следующую.
+     */
+    public void observe(PageRefresh refresh, long contentHash, LocalDateTime now) {
+        boolean changed = contentHash != refresh.getContentHash();
+        double elapsed = Math.max(1, Duration.between(refresh.getLastFetched(), now).toSeconds());
+        double previous = refresh.getFetches() * DECAY;
+        double fetches = previous + 1;
+        refresh.setMeanInterval((refresh.getMeanInterval() * previous + elapsed) / fetches);
+        refresh.setChanges(refresh.getChanges() * DECAY + (changed ? 1 : 0));
+        refresh.setFetches(fetches);
+        refresh.setContentHash(contentHash);
+        refresh.setLastFetched(now);
+        refresh.setNextFetch(now.plusSeconds(nextInterval(refresh, elapsed, changed)));
+    }
+
+    /**
+     * Загрузка не удалась: ничего не узнали, повторяем через тот же интервал.
+     */
+    public void postpone(PageRefresh refresh, LocalDateTime now) {
+        long interval = Duration.between(refresh.getLastFetched(), refresh.getNextFetch()).toSeconds();
+        refresh.setNextFetch(now.plusSeconds(clamp(interval)));
+    }
+
+    private long nextInterval(PageRefresh refresh, double elapsed, boolean changed) {
+        // Оценка Чо и Гарсиа-Молины: между загрузками страница могла смениться
+        // несколько раз, поэтому долю загрузок с изменениями нельзя делить на интервал напрямую
+        double n = refresh.getFetches();
+        double x = Math.min(refresh.getChanges(), n);
+        double rate = -Math.log((n - x + 0.5) / (n + 0.5)) / refresh.getMeanInterval();
+        double interval = rate > 0 ? 1 / rate : maxIntervalSec;
+        // По одной загрузке без изменений интервал растёт не больше чем вдвое,
+        // а после изменения не растёт совсем
+        interval = Math.min(interval, changed ? elapsed : elapsed * 2);
+        return clamp((long) interval);
+    }
+
+    private long clamp(long intervalSec) {
+        return Math.min(maxIntervalSec, Math.max(minIntervalSec, intervalSec));
+    }
+
+    /**
+     * 64-битный FNV-1a по тексту страницы без разметки: изменения только в HTML
+     * (токены, атрибуты, скрипты) не считаются изменением страницы.
+     */
+    public static long contentHash(String text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
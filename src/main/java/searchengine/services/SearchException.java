@@ -0,0 +1,11 @@
+package searchengine.services;
+
+public class SearchException extends Exception {
+    public SearchException(String message) {
+        super(message);
+    }
+
+    public SearchException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,61 @@
+package searchengine.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import searchengine.model.Site;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Кэш ранжированных выдач по нормализованному запросу и сайту.
+ * Запись действительна, пока не изменилось поколение индекса её сайта,
+ * поэтому листание выдачи через offset не пересчитывает ранжирование.
+ * Размер кэша ограничен суммарным числом страниц в выдачах, а не числом запросов:
+ * запись общего запроса может держать весь сайт.
+ * <p>
+ * Поколения считаются на этом узле и не видят страниц, записанных другими узлами,
+ * поэтому запись живёт не дольше app.siteRegistryRefreshMs — за это время реестр сайтов
+ * тоже подхватывает чужие изменения.
+ */
+@Component
+public class SearchResultCache {
+
+    private final Cache<Key, Entry> cache;
+    private final IndexGenerations indexGenerations;
+
+    public SearchResultCache(IndexGenerations indexGenerations,
+                             @Value("${app.searchCachePages:100000}") long maximumPages,
+                             @Value("${app.siteRegistryRefreshMs:10000}") long maxAgeMs) {
+        this.indexGenerations = indexGenerations;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumPages)
+                .weigher((Key key, Entry entry) -> entry.pages().size() + 1)
+                .expireAfterWrite(Duration.ofMillis(maxAgeMs))
+                .build();
+    }
+
+    List<RankedPage> getOrCompute(ParsedQuery query, Site site, Supplier<List<RankedPage>> loader) {
+        // Поколение снимается до расчёта: если индекс изменится во время поиска, запись сразу устареет
+        long generation = indexGenerations.current(site.getId());
+
+        Key key = new Key(query.cacheKey(), site.getId());
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null && entry.generation() == generation) {
+            return entry.pages();
+        }
+
+        List<RankedPage> pages = List.copyOf(loader.get());
+        cache.put(key, new Entry(generation, pages));
+        return pages;
+    }
+
+    private record Key(String query, Long siteId) {
+    }
+
+    private record Entry(long generation, List<RankedPage> pages) {
+    }
+}
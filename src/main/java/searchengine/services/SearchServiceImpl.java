@@ -0,0 +1,345 @@
+package searchengine.services;
+
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import searchengine.dto.search.SearchData;
+import searchengine.dto.search.SearchResponse;
+import searchengine.model.Lemma;
+import searchengine.model.Site;
+import searchengine.repository.IndexEntry;
+import searchengine.repository.IndexRepository;
+import searchengine.repository.LemmaRepository;
+import searchengine.repository.PageRepository;
+import searchengine.repository.PageSummary;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+public class SearchServiceImpl implements SearchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchServiceImpl.class);
+
+    private static final Comparator<RankedPage> BY_RELEVANCE =
+            Comparator.comparingDouble(RankedPage::getRelevance).reversed();
+
+    @Value("${app.searchTimeoutMs:3000}")
+    private long searchTimeoutMs;
+
+    // Насколько статическая оценка страницы может поднять её релевантность: до (1 + вес) раз
+    @Value("${app.staticScoreWeight:0.2}")
+    private float staticScoreWeight;
+
+    private final SiteRegistry siteRegistry;
+    private final LemmaRepository lemmaRepository;
+    private final IndexRepository indexRepository;
+    private final PageRepository pageRepository;
+    private final TextProcessingService textProcessingService;
+    private final SnippetBuilder snippetBuilder;
+    private final SearchResultCache searchResultCache;
+    private final StaticScores staticScores;
+    private final ExecutorService searchExecutor;
+    private final IndexingMetrics indexingMetrics;
+
+    public SearchServiceImpl(SiteRegistry siteRegistry,
+                             LemmaRepository lemmaRepository,
+                             IndexRepository indexRepository,
+                             PageRepository pageRepository,
+                             TextProcessingService textProcessingService,
+                             SnippetBuilder snippetBuilder,
+                             SearchResultCache searchResultCache,
+                             StaticScores staticScores,
+                             @Qualifier("searchExecutor") ExecutorService searchExecutor,
+                             IndexingMetrics indexingMetrics) {
+        this.siteRegistry = siteRegistry;
+        this.lemmaRepository = lemmaRepository;
+        this.indexRepository = indexRepository;
+        this.pageRepository = pageRepository;
+        this.textProcessingService = textProcessingService;
+        this.snippetBuilder = snippetBuilder;
+        this.searchResultCache = searchResultCache;
+        this.staticScores = staticScores;
+        this.searchExecutor = searchExecutor;
+        this.indexingMetrics = indexingMetrics;
+    }
+
+    @Override
+    public SearchResponse search(String query, String siteUrl, int offset, int limit) throws SearchException {
+        Timer.Sample sample = Timer.start();
+        try {
+            return doSearch(query, siteUrl, offset, limit);
+        } finally {
+            sample.stop(indexingMetrics.searchTimer());
+        }
+    }
+
+    private SearchResponse doSearch(String query, String siteUrl, int offset, int limit) throws SearchException {
+        if (query == null || query.isBlank()) {
+            throw new SearchException("Задан пустой поисковый запрос");
+        }
+
+        // Нормализуем запрос так же, как текст страниц при индексации
+        ParsedQuery parsedQuery = ParsedQuery.parse(query, textProcessingService);
+        List<Site> sites = resolveSites(siteUrl);
+
+        List<List<RankedPage>> perSite = searchSites(sites, parsedQuery);
+        int total = perSite.stream().mapToInt(List::size).sum();
+        int from = Math.min(Math.max(offset, 0), total);
+        int to = Math.min(from + Math.max(limit, 0), total);
+        List<RankedPage> rankedPages = mergeTop(perSite, to);
+
+        SearchResponse response = new SearchResponse();
+        response.setResult(true);
+        response.setCount(total);
+        response.setData(buildData(rankedPages, from, to, sites, parsedQuery.getLemmas()));
+        return response;
+    }
+
+    private List<Site> resolveSites(String siteUrl) throws SearchException {
+        if (siteUrl == null || siteUrl.isBlank()) {
+            return siteRegistry.liveSites();
+        }
+        Site site = siteRegistry.findSite(siteUrl)
+                .orElseThrow(() -> new SearchException("Указанный сайт не найден: " + siteUrl));
+        return List.of(site);
+    }
+
+    /**
+     * Ищет по каждому сайту в отдельной задаче, в том числе когда сайт один. Сайты, не
+     * уложившиеся в общий срок запроса или отклонённые переполненным пулом, в выдачу
+     * не попадают, чтобы один большой сайт не задерживал весь ответ.
+     *
+     * @throws SearchException если ни один сайт не успел ответить
+     */
+    private List<List<RankedPage>> searchSites(List<Site> sites, ParsedQuery query) throws SearchException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(searchTimeoutMs);
+        List<Future<List<RankedPage>>> futures = new ArrayList<>(sites.size());
+        for (Site site : sites) {
+            try {
+                futures.add(searchExecutor.submit(() -> searchSiteCached(site, query)));
+            } catch (RejectedExecutionException e) {
+                futures.add(null);
+            }
+        }
+
+        List<List<RankedPage>> results = new ArrayList<>(sites.size());
+        int missed = 0;
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                Future<List<RankedPage>> future = futures.get(i);
+                if (future == null) {
+                    logger.warn("Поиск по сайту {} отклонён: пул поиска занят", sites.get(i).getUrl());
+                    missed++;
+                    continue;
+                }
+                try {
+                    results.add(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                } catch (TimeoutException e) {
+                    future.cancel(true);
+                    logger.warn("Поиск по сайту {} не уложился в {} мс", sites.get(i).getUrl(), searchTimeoutMs);
+                    missed++;
+                } catch (ExecutionException e) {
+                    logger.error("Ошибка поиска по сайту {}", sites.get(i).getUrl(), e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            futures.stream().filter(Objects::nonNull).forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new SearchException("Поиск прерван", e);
+        }
+        if (results.isEmpty() && missed > 0) {
+            throw new SearchException("Поиск не уложился в отведённое время, повторите запрос позже");
+        }
+        return results;
+    }
+
+    private List<RankedPage> searchSiteCached(Site site, ParsedQuery query) {
+        return searchResultCache.getOrCompute(query, site, () -> {
+            List<RankedPage> rankedPages = new ArrayList<>(searchSite(site, query));
+            rankedPages.sort(BY_RELEVANCE);
+            return rankedPages;
+        });
+    }
+
+    /**
+     * K-путевое слияние отсортированных выдач сайтов: возвращает первые limit страниц,
+     * не сортируя объединённый список целиком.
+     */
+    private static List<RankedPage> mergeTop(List<List<RankedPage>> lists, int limit) {
+        if (lists.size() == 1) {
+            List<RankedPage> single = lists.get(0);
+            return single.subList(0, Math.min(limit, single.size()));
+        }
+
+        PriorityQueue<Cursor> heap = new PriorityQueue<>(Math.max(lists.size(), 1),
+                (a, b) -> BY_RELEVANCE.compare(a.current(), b.current()));
+        for (List<RankedPage> list : lists) {
+            if (!list.isEmpty()) {
+                heap.add(new Cursor(list));
+            }
+        }
+
+        List<RankedPage> merged = new ArrayList<>(limit);
+        while (merged.size() < limit && !heap.isEmpty()) {
+            Cursor cursor = heap.poll();
+            merged.add(cursor.current());
+            if (cursor.advance()) {
+                heap.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    private List<RankedPage> searchSite(Site site, ParsedQuery query) {
+        if (query.isEmpty()) {
+            return List.of();
+        }
+        List<Lemma> lemmas = lemmaRepository.findBySiteAndLemmaIn(site, query.getLemmas());
+        if (lemmas.size() < query.getLemmas().size()) {
+            return List.of();
+        }
+
+        // Пересекаем страницы, начиная с самой редкой леммы
+        lemmas.sort(Comparator.comparingInt(Lemma::getFrequency));
+        Set<Long> pageIds = new HashSet<>(indexRepository.findPageIdsByLemma(lemmas.get(0)));
+        for (int i = 1; i < lemmas.size() && !pageIds.isEmpty(); i++) {
+            // retainAll проверяет contains у аргумента: у списка это линейный проход на каждый id
+            pageIds.retainAll(new HashSet<>(indexRepository.findPageIdsByLemma(lemmas.get(i))));
+        }
+        if (pageIds.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, String> lemmaTexts = new HashMap<>();
+        for (Lemma lemma : lemmas) {
+            lemmaTexts.put(lemma.getId(), lemma.getLemma());
+        }
+        Map<Long, Map<String, IndexEntry>> entriesByPage = new HashMap<>();
+        for (IndexEntry entry : indexRepository.findEntries(lemmas, pageIds)) {
+            entriesByPage.computeIfAbsent(entry.getPageId(), id -> new HashMap<>())
+                    .put(lemmaTexts.get(entry.getLemmaId()), entry);
+        }
+
+        // Позиции нужны фразам (и фразе из одной повторённой леммы, как "дом дом")
+        // и оценке близости, которая имеет смысл только для нескольких лемм
+        boolean proximity = lemmas.size() > 1;
+        boolean positional = proximity || !query.getPhrases().isEmpty();
+        List<RankedPage> rankedPages = new ArrayList<>(entriesByPage.size());
+        for (Map.Entry<Long, Map<String, IndexEntry>> pageEntries : entriesByPage.entrySet()) {
+            Map<String, int[]> positions = positional ? decodePositions(pageEntries.getValue()) : Map.of();
+            if (!matchesPhrases(query, positions)) {
+                continue;
+            }
+
+            RankedPage page = new RankedPage(pageEntries.getKey());
+            for (IndexEntry entry : pageEntries.getValue().values()) {
+                page.addLemma(entry.getRankValue(), entry.getFirstOffset());
+            }
+            if (proximity) {
+                page.boost(proximityBoost(positions));
+            }
+            page.boost(1f + staticScoreWeight * staticScores.score(site, page.getPageId()));
+            rankedPages.add(page);
+        }
+        return rankedPages;
+    }
+
+    private static Map<String, int[]> decodePositions(Map<String, IndexEntry> entries) {
+        Map<String, int[]> positions = new HashMap<>();
+        for (Map.Entry<String, IndexEntry> entry : entries.entrySet()) {
+            positions.put(entry.getKey(), PositionCodec.decode(entry.getValue().getPositions()));
+        }
+        return positions;
+    }
+
+    private static boolean matchesPhrases(ParsedQuery query, Map<String, int[]> positions) {
+        for (List<ParsedQuery.PhraseTerm> phrase : query.getPhrases()) {
+            if (!PhraseMatcher.containsPhrase(phrase, positions)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Множитель от 1 до 2: чем ближе друг к другу слова запроса на странице, тем он больше.
+     */
+    private static float proximityBoost(Map<String, int[]> positions) {
+        int span = PhraseMatcher.minimalSpan(positions.values());
+        if (span == Integer.MAX_VALUE || span <= 1) {
+            return 1f;
+        }
+        return 1f + (float) (positions.size() - 1) / (span - 1);
+    }
+
+    private static class Cursor {
+        private final List<RankedPage> pages;
+        private int position;
+
+        Cursor(List<RankedPage> pages) {
+            this.pages = pages;
+        }
+
+        RankedPage current() {
+            return pages.get(position);
+        }
+
+        boolean advance() {
+            return ++position < pages.size();
+        }
+    }
+
+    private List<SearchData> buildData(List<RankedPage> rankedPages, int from, int to,
+                                       List<Site> sites, Set<String> queryLemmas) {
+        if (from >= to) {
+            return List.of();
+        }
+        float maxRelevance = rankedPages.get(0).getRelevance();
+        List<RankedPage> window = rankedPages.subList(from, to);
+
+        Map<Long, Site> sitesById = sites.stream()
+                .collect(Collectors.toMap(Site::getId, Function.identity()));
+        Map<Long, PageSummary> summaries = pageRepository
+                .findSummaries(window.stream().map(RankedPage::getPageId).toList())
+                .stream()
+                .collect(Collectors.toMap(PageSummary::getId, Function.identity()));
+
+        List<SearchData> data = new ArrayList<>(window.size());
+        for (RankedPage rankedPage : window) {
+            PageSummary summary = summaries.get(rankedPage.getPageId());
+            if (summary == null) {
+                logger.warn("Страница {} удалена во время поиска", rankedPage.getPageId());
+                continue;
+            }
+            Site site = sitesById.get(summary.getSiteId());
+            SearchData item = new SearchData();
+            item.setSite(site.getUrl());
+            item.setSiteName(site.getName());
+            item.setUri(summary.getPath());
+            item.setTitle(summary.getTitle());
+            item.setSnippet(snippetBuilder.buildSnippet(rankedPage.getPageId(), rankedPage.getOffsets(), queryLemmas));
+            item.setRelevance(rankedPage.getRelevance() / maxRelevance);
+            data.add(item);
+        }
+        return data;
+    }
+}
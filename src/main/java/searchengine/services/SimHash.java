@@ -0,0 +1,82 @@
+package searchengine.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 64-битный SimHash текста по шинглам из трёх слов. У почти одинаковых текстов
+ * отпечатки отличаются в нескольких битах, поэтому близость проверяется расстоянием Хэмминга.
+ */
+public final class SimHash {
+
+    private static final int SHINGLE = 3;
+
+    private SimHash() {
+    }
+
+    /**
+     * @return отпечаток текста или 0, если в тексте меньше minWords слов: у коротких
+     * страниц отпечатки совпадают слишком часто, чтобы им доверять
+     */
+    public static long fingerprint(String text, int minWords) {
+        List<String> words = words(text);
+        if (words.size() < Math.max(minWords, SHINGLE)) {
+            return 0;
+        }
+        int[] weights = new int[64];
+        StringBuilder shingle = new StringBuilder();
+        for (int i = 0; i + SHINGLE <= words.size(); i++) {
+            shingle.setLength(0);
+            for (int j = i; j < i + SHINGLE; j++) {
+                shingle.append(words.get(j)).append(' ');
+            }
+            long hash = hash64(shingle);
+            for (int bit = 0; bit < 64; bit++) {
+                weights[bit] += ((hash >>> bit) & 1) != 0 ? 1 : -1;
+            }
+        }
+        long fingerprint = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        // 0 означает «нет отпечатка»
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * FNV-1a с перемешиванием из SplitMix64: у чистого FNV старшие биты коротких строк
+     * распределены плохо, а SimHash использует все 64.
+     */
+    static long hash64(CharSequence value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return words;
+    }
+}
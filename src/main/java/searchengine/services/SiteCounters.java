@@ -0,0 +1,85 @@
+package searchengine.services;
+
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Число страниц и лемм по сайтам, которое поддерживается при индексации.
+ * Статистика читает его вместо COUNT(*) по таблицам page и lemma.
+ * Изменения внутри транзакции применяются после её коммита, см. {@link TransactionHooks}.
+ */
+@Component
+public class SiteCounters {
+
+    private final Map<Long, Counters> counters = new ConcurrentHashMap<>();
+
+    public void pageAdded(Long siteId) {
+        add(siteId, 1, 0);
+    }
+
+    public void lemmaAdded(Long siteId) {
+        add(siteId, 0, 1);
+    }
+
+    public void lemmaRemoved(Long siteId) {
+        add(siteId, 0, -1);
+    }
+
+    public long pages(Long siteId) {
+        return get(siteId).pages.sum();
+    }
+
+    public long lemmas(Long siteId) {
+        return get(siteId).lemmas.sum();
+    }
+
+    /**
+     * Выставляет счётчики по значениям из БД. Изменения, пришедшие между подсчётом в БД
+     * и этим вызовом, теряются до следующей сверки.
+     */
+    public void reconcile(Long siteId, long pages, long lemmas) {
+        Counters siteCounters = get(siteId);
+        siteCounters.pages.add(pages - siteCounters.pages.sum());
+        siteCounters.lemmas.add(lemmas - siteCounters.lemmas.sum());
+    }
+
+    public boolean isTracked(Long siteId) {
+        return counters.containsKey(siteId);
+    }
+
+    public void remove(Long siteId) {
+        counters.remove(siteId);
+    }
+
+    // Изменения текущей транзакции по сайтам: {страницы, леммы}
+    private void add(Long siteId, long pages, long lemmas) {
+        Map<Long, long[]> pending = TransactionHooks.accumulator(this, HashMap::new,
+                changes -> changes.forEach((id, delta) -> apply(id, delta[0], delta[1])));
+        if (pending == null) {
+            apply(siteId, pages, lemmas);
+            return;
+        }
+        long[] delta = pending.computeIfAbsent(siteId, id -> new long[2]);
+        delta[0] += pages;
+        delta[1] += lemmas;
+    }
+
+    private void apply(Long siteId, long pages, long lemmas) {
+        Counters siteCounters = get(siteId);
+        siteCounters.pages.add(pages);
+        siteCounters.lemmas.add(lemmas);
+    }
+
+    private Counters get(Long siteId) {
+        return counters.computeIfAbsent(siteId, id -> new Counters());
+    }
+
+    private static class Counters {
+        private final LongAdder pages = new LongAdder();
+        private final LongAdder lemmas = new LongAdder();
+    }
+}
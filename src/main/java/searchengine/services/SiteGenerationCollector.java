@@ -0,0 +1,83 @@
+package searchengine.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import searchengine.model.Site;
+import searchengine.model.SiteStatus;
+import searchengine.repository.SiteRepository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Удаляет поколения сайтов, которые больше не обслуживают поиск: заменённые после
+ * переиндексации и недостроенные. Заменённое поколение живёт ещё app.siteGcDelayMs,
+ * чтобы успели завершиться запросы, начатые до переключения. Поколение в статусе INDEXING
+ * недостроено, если ни один узел не держит аренду на индексацию его сайта.
+ */
+@Service
+public class SiteGenerationCollector {
+
+    private static final Logger logger = LoggerFactory.getLogger(SiteGenerationCollector.class);
+    private static final String LEASE = "site-gc";
+
+    private final SiteRepository siteRepository;
+    private final SiteResetService siteResetService;
+    private final SiteCounters siteCounters;
+    private final LeaseService leaseService;
+    private final long delayMs;
+
+    public SiteGenerationCollector(SiteRepository siteRepository,
+                                   SiteResetService siteResetService,
+                                   SiteCounters siteCounters,
+                                   LeaseService leaseService,
+                                   @Value("${app.siteGcDelayMs:60000}") long delayMs) {
+        this.siteRepository = siteRepository;
+        this.siteResetService = siteResetService;
+        this.siteCounters = siteCounters;
+        this.leaseService = leaseService;
+        this.delayMs = delayMs;
+    }
+
+    /**
+     * Запускается и сразу после старта: обходы, брошенные остановленными узлами, удаляются,
+     * а те, что строят другие узлы, защищены их арендой.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${app.siteGcDelayMs:60000}", fixedDelayString = "${app.siteGcDelayMs:60000}")
+    public void collectRetired() {
+        if (!leaseService.tryAcquire(LEASE, null)) {
+            return;
+        }
+        try {
+            LocalDateTime threshold = LocalDateTime.now().minusNanos(delayMs * 1_000_000);
+            for (Site site : siteRepository.findByLiveFalse()) {
+                boolean retired = site.getStatus() != SiteStatus.INDEXING || isAbandoned(site);
+                if (retired && site.getStatusTime().isBefore(threshold)) {
+                    collect(site);
+                }
+            }
+        } finally {
+            leaseService.release(LEASE);
+        }
+    }
+
+    private boolean isAbandoned(Site site) {
+        return site.getStatus() == SiteStatus.INDEXING && !leaseService.isActive(LeaseService.SITE + site.getUrl());
+    }
+
+    private void collect(Site site) {
+        try {
+            siteResetService.resetSite(site);
+            siteRepository.delete(site);
+            siteCounters.remove(site.getId());
+            logger.info("Удалено неактивное поколение сайта {} (id {})", site.getUrl(), site.getId());
+        } catch (Exception e) {
+            logger.warn("Не удалось удалить поколение сайта {} (id {}): {}", site.getUrl(), site.getId(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package searchengine.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import searchengine.config.SiteConfig;
+import searchengine.config.SitesList;
+import searchengine.model.Site;
+import searchengine.repository.SiteRepository;
+
+import javax.annotation.PostConstruct;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Действующие поколения сайтов из конфигурации в памяти. Сайт страницы находится по URL
+ * без запросов к БД: корни сайтов лежат в дереве по хосту и сегментам пути, и побеждает
+ * самый длинный подходящий корень.
+ * <p>
+ * Состояние хранится в неизменяемом снимке, который заменяется целиком, поэтому чтение
+ * идёт без блокировок. Снимок обновляется после коммита изменений сайта на этом узле
+ * и перечитывается из БД раз в app.siteRegistryRefreshMs — для поколений, переключённых
+ * другими узлами.
+ */
+@Component
+public class SiteRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(SiteRegistry.class);
+
+    private final SitesList sitesList;
+    private final SiteRepository siteRepository;
+    private final Node roots;
+    private volatile Map<String, Site> live = Map.of();
+
+    public SiteRegistry(SitesList sitesList, SiteRepository siteRepository) {
+        this.sitesList = sitesList;
+        this.siteRepository = siteRepository;
+        this.roots = new Node();
+        for (SiteConfig siteConfig : sitesList.getSiteConfigs()) {
+            Node node = roots;
+            for (String key : keys(siteConfig.getUrl())) {
+                node = node.children.computeIfAbsent(key, k -> new Node());
+            }
+            node.rootUrl = siteConfig.getUrl();
+        }
+    }
+
+    @PostConstruct
+    @Scheduled(initialDelayString = "${app.siteRegistryRefreshMs:10000}",
+            fixedDelayString = "${app.siteRegistryRefreshMs:10000}")
+    public void reload() {
+        Map<String, Site> loaded = new HashMap<>();
+        for (Site site : siteRepository.findByLiveTrue()) {
+            loaded.merge(site.getUrl(), site, SiteRegistry::newer);
+        }
+        synchronized (this) {
+            // Поколение, переключённое на этом узле во время чтения, не откатываем
+            live.forEach((url, site) -> loaded.computeIfPresent(url, (key, read) -> newer(site, read)));
+            live = Collections.unmodifiableMap(loaded);
+        }
+        logger.debug("Реестр сайтов обновлён: {} сайтов", loaded.size());
+    }
+
+    /**
+     * Учитывает сохранённый сайт после коммита транзакции, в которой он изменился.
+     */
+    public void siteChanged(Site site) {
+        if (!site.isLive()) {
+            return;
+        }
+        TransactionHooks.afterCommit(() -> {
+            synchronized (this) {
+                Map<String, Site> updated = new HashMap<>(live);
+                updated.merge(site.getUrl(), site, SiteRegistry::newer);
+                live = Collections.unmodifiableMap(updated);
+            }
+        });
+    }
+
+    /**
+     * @return сайт и путь страницы относительно корня сайта или пусто, если URL не относится
+     * ни к одному сайту из конфигурации либо сайт ещё не индексировался
+     */
+    public Optional<SitePage> resolve(String url) {
+        Root root = root(url);
+        Site site = root == null ? null : live.get(root.url());
+        if (site == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new SitePage(site, path(url, root.depth())));
+    }
+
+    /**
+     * @return корень сайта из конфигурации, к которому относится URL, независимо от того,
+     * индексировался ли сайт; пусто для адресов вне сайтов конфигурации
+     */
+    public Optional<String> rootUrl(String url) {
+        Root root = root(url);
+        return root == null ? Optional.empty() : Optional.of(root.url());
+    }
+
+    public Optional<Site> findSite(String url) {
+        return resolve(url).map(SitePage::site);
+    }
+
+    /**
+     * @return действующие поколения сайтов в порядке конфигурации
+     */
+    public List<Site> liveSites() {
+        Map<String, Site> current = live;
+        List<Site> sites = new ArrayList<>();
+        for (SiteConfig siteConfig : sitesList.getSiteConfigs()) {
+            Site site = current.get(siteConfig.getUrl());
+            if (site != null) {
+                sites.add(site);
+            }
+        }
+        return sites;
+    }
+
+    // Самый длинный корень из конфигурации, подходящий к URL, и число сегментов его пути
+    private Root root(String url) {
+        List<String> keys;
+        try {
+            keys = keys(url);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        Node node = roots;
+        Root root = null;
+        for (int i = 0; i < keys.size() && node != null; i++) {
+            node = node.children.get(keys.get(i));
+            if (node != null && node.rootUrl != null) {
+                root = new Root(node.rootUrl, i);
+            }
+        }
+        return root;
+    }
+
+    // Ключи дерева: хост с портом, если он не стандартный, затем сегменты пути.
+    // Схема и "www." не учитываются: ссылки на сайте часто расходятся с корнем в них
+    private static List<String> keys(String url) {
+        URI uri = parse(url);
+        String host = uri.getHost().toLowerCase(Locale.ROOT);
+        if (host.startsWith("www.")) {
+            host = host.substring(4);
+        }
+        boolean defaultPort = uri.getPort() == -1 || uri.getPort() == 80 || uri.getPort() == 443;
+        List<String> keys = new ArrayList<>();
+        keys.add(defaultPort ? host : host + ":" + uri.getPort());
+        if (uri.getRawPath() != null) {
+            for (String segment : uri.getRawPath().split("/")) {
+                if (!segment.isEmpty()) {
+                    keys.add(segment);
+                }
+            }
+        }
+        return keys;
+    }
+
+    // Путь страницы без первых depth сегментов (пути корня) вместе со строкой запроса
+    private static String path(String url, int depth) {
+        URI uri = parse(url);
+        String path = uri.getRawPath() == null ? "" : uri.getRawPath();
+        int position = 0;
+        for (int skipped = 0; skipped < depth; skipped++) {
+            while (position < path.length() && path.charAt(position) == '/') {
+                position++;
+            }
+            int next = path.indexOf('/', position);
+            position = next < 0 ? path.length() : next;
+        }
+        String relative = path.substring(position);
+        if (relative.isEmpty()) {
+            relative = "/";
+        }
+        return uri.getRawQuery() == null ? relative : relative + "?" + uri.getRawQuery();
+    }
+
+    private static URI parse(String url) {
+        try {
+            URI uri = new URI(url.strip());
+            if (uri.getHost() == null) {
+                throw new IllegalArgumentException("В адресе нет хоста: " + url);
+            }
+            return uri;
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Некорректный адрес: " + url, e);
+        }
+    }
+
+    // При равных id побеждает b: более свежая копия той же строки, например со сменённым статусом
+    private static Site newer(Site a, Site b) {
+        return a.getId() > b.getId() ? a : b;
+    }
+
+    public record SitePage(Site site, String path) {
+    }
+
+    private record Root(String url, int depth) {
+    }
+
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private String rootUrl;
+    }
+}
@@ -0,0 +1,128 @@
+package searchengine.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.model.Lemma;
+import searchengine.model.Site;
+import searchengine.repository.IndexRepository;
+import searchengine.repository.LemmaRepository;
+import searchengine.repository.PageAliasRepository;
+import searchengine.repository.PageContentRepository;
+import searchengine.repository.PageLinksRepository;
+import searchengine.repository.PageRefreshRepository;
+import searchengine.repository.PageScoreRepository;
+import searchengine.repository.PageRepository;
+
+import java.util.List;
+
+/**
+ * Очистка данных сайта перед повторной индексацией. Строки удаляются порциями
+ * по app.resetChunkSize, каждая порция — своей короткой транзакцией, поэтому таблицы
+ * не блокируются надолго, а журнал транзакций не разрастается. Порции берутся по
+ * первичному ключу: сначала search_index и зависимые от страниц таблицы по id страниц, затем сами
+ * страницы, в конце леммы сайта.
+ */
+@Service
+public class SiteResetService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SiteResetService.class);
+
+    private final PageRepository pageRepository;
+    private final PageContentRepository pageContentRepository;
+    private final PageRefreshRepository pageRefreshRepository;
+    private final PageAliasRepository pageAliasRepository;
+    private final PageLinksRepository pageLinksRepository;
+    private final PageScoreRepository pageScoreRepository;
+    private final IndexRepository indexRepository;
+    private final LemmaRepository lemmaRepository;
+    private final SuggestionService suggestionService;
+    private final SiteCounters siteCounters;
+    private final IndexGenerations indexGenerations;
+    private final NearDuplicateIndex nearDuplicates;
+    private final StaticScores staticScores;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+
+    public SiteResetService(PageRepository pageRepository,
+                            PageContentRepository pageContentRepository,
+                            PageRefreshRepository pageRefreshRepository,
+                            PageAliasRepository pageAliasRepository,
+                            PageLinksRepository pageLinksRepository,
+                            PageScoreRepository pageScoreRepository,
+                            IndexRepository indexRepository,
+                            LemmaRepository lemmaRepository,
+                            SuggestionService suggestionService,
+                            SiteCounters siteCounters,
+                            IndexGenerations indexGenerations,
+                            NearDuplicateIndex nearDuplicates,
+                            StaticScores staticScores,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${app.resetChunkSize:1000}") int chunkSize) {
+        this.pageRepository = pageRepository;
+        this.pageContentRepository = pageContentRepository;
+        this.pageRefreshRepository = pageRefreshRepository;
+        this.pageAliasRepository = pageAliasRepository;
+        this.pageLinksRepository = pageLinksRepository;
+        this.pageScoreRepository = pageScoreRepository;
+        this.indexRepository = indexRepository;
+        this.lemmaRepository = lemmaRepository;
+        this.suggestionService = suggestionService;
+        this.siteCounters = siteCounters;
+        this.indexGenerations = indexGenerations;
+        this.nearDuplicates = nearDuplicates;
+        this.staticScores = staticScores;
+        this.transactionTemplate = transactionTemplate;
+        this.chunkSize = chunkSize;
+    }
+
+    public void resetSite(Site site) {
+        long started = System.currentTimeMillis();
+        long pages = 0;
+        long indexes = 0;
+        while (true) {
+            List<Long> pageIds = pageRepository.findIdsBySite(site, PageRequest.of(0, chunkSize));
+            if (pageIds.isEmpty()) {
+                break;
+            }
+            Integer deleted = transactionTemplate.execute(status -> {
+                int indexRows = indexRepository.deleteByPageIdIn(pageIds);
+                pageContentRepository.deleteByPageIdIn(pageIds);
+                pageRefreshRepository.deleteByPageIdIn(pageIds);
+                pageAliasRepository.deleteByCanonicalIdIn(pageIds);
+                pageLinksRepository.deleteByPageIdIn(pageIds);
+                pageScoreRepository.deleteByPageIdIn(pageIds);
+                pageRepository.deleteAllByIdInBatch(pageIds);
+                return indexRows;
+            });
+            indexes += deleted == null ? 0 : deleted;
+            pages += pageIds.size();
+        }
+
+        long lemmas = 0;
+        while (true) {
+            List<Lemma> chunk = lemmaRepository.findBySiteOrderById(site, PageRequest.of(0, chunkSize));
+            if (chunk.isEmpty()) {
+                break;
+            }
+            List<Long> lemmaIds = chunk.stream().map(Lemma::getId).toList();
+            transactionTemplate.executeWithoutResult(status -> lemmaRepository.deleteAllByIdInBatch(lemmaIds));
+            for (Lemma lemma : chunk) {
+                if (site.isLive()) {
+                    suggestionService.onFrequencyChanged(lemma.getLemma(), -lemma.getFrequency());
+                }
+            }
+            lemmas += chunk.size();
+        }
+
+        siteCounters.reconcile(site.getId(), 0, 0);
+        indexGenerations.bump(site.getId());
+        nearDuplicates.forget(site.getId());
+        staticScores.forget(site.getId());
+        logger.info("Данные сайта {} очищены за {} мс: страниц {}, записей индекса {}, лемм {}",
+                site.getUrl(), System.currentTimeMillis() - started, pages, indexes, lemmas);
+    }
+}
@@ -19,27 +19,19 @@ public class SiteService {
     private static final Logger logger = LoggerFactory.getLogger(SiteService.class);
 
     private final SiteRepository siteRepository;
+    private final CrawlProgress crawlProgress;
+    private final SiteRegistry siteRegistry;
+    private final LeaseService leaseService;
+    private final SuggestionService suggestionService;
 
     @Autowired
-    public SiteService(SiteRepository siteRepository) {
+    public SiteService(SiteRepository siteRepository, CrawlProgress crawlProgress, SiteRegistry siteRegistry,
+                       LeaseService leaseService, SuggestionService suggestionService) {
         this.siteRepository = siteRepository;
-    }
-
-    @Transactional
-    public Site createOrUpdateSite(SiteConfig siteConfig) throws IndexingException {
-        try {
-            Optional<Site> existingSiteOptional = siteRepository.findByUrl(siteConfig.getUrl());
-
-            if (existingSiteOptional.isPresent()) {
-                Site site = existingSiteOptional.get();
-                return updateSiteFields(site, siteConfig);
-            } else {
-                return createNewSite(siteConfig);
-            }
-        } catch (Exception e) {
-            logger.error("Error while creating or updating site", e);
-            throw new IndexingException("Error while creating or updating site", e);
-        }
+        this.crawlProgress = crawlProgress;
+        this.siteRegistry = siteRegistry;
+        this.leaseService = leaseService;
+        this.suggestionService = suggestionService;
     }
 
     @Transactional
@@ -50,7 +42,7 @@ public class SiteService {
             newSite.setUrl(siteConfig.getUrl());
             newSite.setStatus(SiteStatus.INDEXING);
             newSite.setStatusTime(LocalDateTime.now());
-            return siteRepository.save(newSite);
+            return save(newSite);
         } catch (Exception e) {
             logger.error("Error while creating a new site", e);
             throw new IndexingException("Error while creating a new site", e);
@@ -58,25 +50,98 @@ public class SiteService {
     }
 
     @Transactional
-    public Site updateSiteFields(Site site, SiteConfig siteConfig) throws IndexingException {
+    public Site updateStatus(Site site, SiteStatus status, String lastError) {
+        site.setStatus(status);
+        site.setStatusTime(LocalDateTime.now());
+        site.setLastError(lastError);
+        Site saved = save(site);
+        crawlProgress.statusChanged(saved, status);
+        return saved;
+    }
+
+    /**
+     * Заводит строку для нового поколения сайта. Поиск её не видит, пока поколение
+     * не будет переключено в {@link #promote(Site, String)}.
+     */
+    @Transactional
+    public Site createShadowSite(SiteConfig siteConfig) throws IndexingException {
         try {
-            site.setName(siteConfig.getName());
-            site.setStatus(SiteStatus.INDEXING);
-            site.setStatusTime(LocalDateTime.now());
+            Site shadow = new Site();
+            shadow.setName(siteConfig.getName());
+            shadow.setUrl(siteConfig.getUrl());
+            shadow.setStatus(SiteStatus.INDEXING);
+            shadow.setStatusTime(LocalDateTime.now());
+            shadow.setLive(false);
+            return siteRepository.save(shadow);
+        } catch (Exception e) {
+            logger.error("Error while creating a new site generation", e);
+            throw new IndexingException("Error while creating a new site generation", e);
+        }
+    }
 
-            if (!site.getUrl().equals(siteConfig.getUrl())) {
-                site.setUrl(siteConfig.getUrl());
-            }
+    /**
+     * Делает построенное поколение действующим. Оба флага меняются одной транзакцией,
+     * поэтому поиск видит либо старое поколение целиком, либо новое. Старое поколение
+     * остаётся в БД до очистки в {@link SiteGenerationCollector}.
+     * <p>
+     * Аренда сайта проверяется в той же транзакции: узел, потерявший её во время обхода,
+     * не переключит поколение поверх построенного другим узлом.
+     *
+     * @return false, если аренда потеряна и поколение не переключено
+     */
+    @Transactional
+    public boolean promote(Site shadow, String lease) {
+        if (!leaseService.confirm(lease)) {
+            return false;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        siteRepository.findFirstByUrlAndLiveTrueOrderByIdDesc(shadow.getUrl()).ifPresent(live -> {
+            live.setLive(false);
+            live.setStatusTime(now);
+            siteRepository.save(live);
+        });
+        shadow.setLive(true);
+        shadow.setStatus(SiteStatus.INDEXED);
+        shadow.setStatusTime(now);
+        shadow.setLastError(null);
+        Site saved = save(shadow);
+        crawlProgress.statusChanged(saved, SiteStatus.INDEXED);
+        // Веса подсказок старого поколения заменяются весами нового
+        TransactionHooks.afterCommit(suggestionService::requestReload);
+        return true;
+    }
 
-            return siteRepository.save(site);
-        } catch (Exception e) {
-            logger.error("Error while updating site fields", e);
-            throw new IndexingException("Error while updating site fields", e);
+    /**
+     * Отмечает неудачную индексацию. Если строилось новое поколение, действующее
+     * продолжает обслуживать поиск, а ошибка показывается в его статусе.
+     */
+    @Transactional
+    public void indexingFailed(Site site, String lastError) {
+        updateStatus(site, SiteStatus.FAILED, lastError);
+        if (site.isLive()) {
+            return;
         }
+        siteRepository.findFirstByUrlAndLiveTrueOrderByIdDesc(site.getUrl()).ifPresent(live -> {
+            live.setLastError("Переиндексация не удалась: " + lastError);
+            save(live);
+        });
     }
 
+    /**
+     * Действующий сайт, к которому относится URL страницы, из {@link SiteRegistry}.
+     */
     public Site getSiteByUrl(String url) {
-        return siteRepository.findByUrl(url).orElse(null);
+        return siteRegistry.findSite(url).orElse(null);
+    }
+
+    public Optional<SiteRegistry.SitePage> resolvePage(String url) {
+        return siteRegistry.resolve(url);
+    }
+
+    private Site save(Site site) {
+        Site saved = siteRepository.save(site);
+        siteRegistry.siteChanged(saved);
+        return saved;
     }
 
 }
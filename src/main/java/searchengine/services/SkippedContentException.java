@@ -0,0 +1,40 @@
+package searchengine.services;
+
+import java.io.IOException;
+
+/**
+ * Ресурс не является HTML-страницей или слишком велик, и его тело не загружалось.
+ * Страница записывается с кодом {@link #getCode()}, чтобы не загружать её снова.
+ */
+public class SkippedContentException extends IOException {
+
+    public static final int UNSUPPORTED_TYPE = 415;
+    public static final int TOO_LARGE = 413;
+
+    private final int code;
+    private final String reason;
+
+    public SkippedContentException(int code, String reason, String message) {
+        super(message);
+        this.code = code;
+        this.reason = reason;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Причина пропуска для метрик: extension, content_type или too_large.
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    // Обычный исход обхода, а не ошибка: стек не нужен, а на сайтах с тысячами
+    // ссылок на файлы его заполнение заметно в профиле
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,42 @@
+package searchengine.services;
+
+/**
+ * Двоичный формат снимка индекса. После заголовка (MAGIC, VERSION) идут записи, каждая
+ * начинается с байта-тега:
+ * <pre>
+ * SITE      url, name
+ * PAGE      path, code, title, simhash, score, text, html, links
+ * LEMMA     lemma, frequency, count, count × (page, rank, firstOffset, positions)
+ * SITE_END
+ * END
+ * </pre>
+ * Страницы сайта нумеруются по порядку записей PAGE, начиная с 0, и LEMMA ссылается на них
+ * по этому номеру. Числа big-endian, строки и массивы байт — длина int и данные (строки
+ * в UTF-8), длина -1 означает null. simhash — байт-флаг и long, score — NaN, если оценки нет.
+ */
+final class SnapshotFormat {
+
+    static final int MAGIC = 0x53534553;
+    static final int VERSION = 1;
+
+    static final byte END = 0;
+    static final byte SITE = 1;
+    static final byte PAGE = 2;
+    static final byte LEMMA = 3;
+    static final byte SITE_END = 4;
+
+    private SnapshotFormat() {
+    }
+
+    record PageRecord(String path, int code, String title, Long simhash, float score,
+                      String text, String html, String links) {
+    }
+
+    /**
+     * Лемма со всеми вхождениями: i-е вхождение — страница pages[i] с ranks[i],
+     * firstOffsets[i] и positions[i].
+     */
+    record LemmaRecord(String lemma, int frequency, int[] pages, float[] ranks,
+                       int[] firstOffsets, byte[][] positions) {
+    }
+}
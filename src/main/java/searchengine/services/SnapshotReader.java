@@ -0,0 +1,128 @@
+package searchengine.services;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Последовательное чтение снимка индекса, см. {@link SnapshotFormat}. Файл отображается
+ * в память окнами по WINDOW байт: данные читаются из страничного кэша без промежуточных
+ * буферов и системных вызовов на каждую запись.
+ */
+final class SnapshotReader implements AutoCloseable {
+
+    private static final long WINDOW = 64L << 20;
+
+    private final FileChannel channel;
+    private final long size;
+    // Окно отображения и его смещение в файле
+    private MappedByteBuffer buffer;
+    private long offset;
+
+    SnapshotReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            size = channel.size();
+            map(0, 0);
+            ensure(8);
+            if (buffer.getInt() != SnapshotFormat.MAGIC) {
+                throw new IOException("Файл не является снимком индекса: " + path);
+            }
+            int version = buffer.getInt();
+            if (version != SnapshotFormat.VERSION) {
+                throw new IOException("Неподдерживаемая версия снимка индекса: " + version);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    byte tag() throws IOException {
+        ensure(1);
+        return buffer.get();
+    }
+
+    /**
+     * @return url и название сайта после тега SITE
+     */
+    String[] site() throws IOException {
+        return new String[]{string(), string()};
+    }
+
+    SnapshotFormat.PageRecord page() throws IOException {
+        String path = string();
+        ensure(4);
+        int code = buffer.getInt();
+        String title = string();
+        ensure(13);
+        boolean hasSimhash = buffer.get() != 0;
+        long simhash = buffer.getLong();
+        float score = buffer.getFloat();
+        return new SnapshotFormat.PageRecord(path, code, title, hasSimhash ? simhash : null, score,
+                string(), string(), string());
+    }
+
+    SnapshotFormat.LemmaRecord lemma() throws IOException {
+        String lemma = string();
+        ensure(8);
+        int frequency = buffer.getInt();
+        int count = buffer.getInt();
+        int[] pages = new int[count];
+        float[] ranks = new float[count];
+        int[] firstOffsets = new int[count];
+        byte[][] positions = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            ensure(12);
+            pages[i] = buffer.getInt();
+            ranks[i] = buffer.getFloat();
+            firstOffsets[i] = buffer.getInt();
+            positions[i] = bytes();
+        }
+        return new SnapshotFormat.LemmaRecord(lemma, frequency, pages, ranks, firstOffsets, positions);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private String string() throws IOException {
+        byte[] bytes = bytes();
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private byte[] bytes() throws IOException {
+        ensure(4);
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        ensure(length);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    // Переотображает окно с текущей позиции, если в нём меньше bytes байт
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        long position = offset + buffer.position();
+        if (position + bytes > size) {
+            throw new EOFException("Снимок индекса обрезан");
+        }
+        map(position, bytes);
+    }
+
+    private void map(long position, int atLeast) throws IOException {
+        offset = position;
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                Math.max(atLeast, Math.min(WINDOW, size - position)));
+    }
+}
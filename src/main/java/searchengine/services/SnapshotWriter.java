@@ -0,0 +1,124 @@
+package searchengine.services;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Последовательная запись снимка индекса через FileChannel и прямой буфер, см. {@link SnapshotFormat}.
+ */
+final class SnapshotWriter implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    SnapshotWriter(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ensure(8);
+        buffer.putInt(SnapshotFormat.MAGIC).putInt(SnapshotFormat.VERSION);
+    }
+
+    void site(String url, String name) throws IOException {
+        tag(SnapshotFormat.SITE);
+        string(url);
+        string(name);
+    }
+
+    void page(SnapshotFormat.PageRecord page) throws IOException {
+        tag(SnapshotFormat.PAGE);
+        string(page.path());
+        ensure(4);
+        buffer.putInt(page.code());
+        string(page.title());
+        ensure(13);
+        buffer.put((byte) (page.simhash() == null ? 0 : 1));
+        buffer.putLong(page.simhash() == null ? 0 : page.simhash());
+        buffer.putFloat(page.score());
+        string(page.text());
+        string(page.html());
+        string(page.links());
+    }
+
+    void lemma(SnapshotFormat.LemmaRecord lemma) throws IOException {
+        tag(SnapshotFormat.LEMMA);
+        string(lemma.lemma());
+        ensure(8);
+        buffer.putInt(lemma.frequency());
+        buffer.putInt(lemma.pages().length);
+        for (int i = 0; i < lemma.pages().length; i++) {
+            ensure(12);
+            buffer.putInt(lemma.pages()[i]);
+            buffer.putFloat(lemma.ranks()[i]);
+            buffer.putInt(lemma.firstOffsets()[i]);
+            bytes(lemma.positions()[i]);
+        }
+    }
+
+    void siteEnd() throws IOException {
+        tag(SnapshotFormat.SITE_END);
+    }
+
+    /**
+     * Дописывает признак конца и сбрасывает данные на диск.
+     *
+     * @return размер снимка в байтах
+     */
+    long finish() throws IOException {
+        tag(SnapshotFormat.END);
+        flush();
+        channel.force(true);
+        return channel.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void tag(byte tag) throws IOException {
+        ensure(1);
+        buffer.put(tag);
+    }
+
+    private void string(String value) throws IOException {
+        bytes(value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void bytes(byte[] value) throws IOException {
+        ensure(4);
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        buffer.putInt(value.length);
+        // Длинное значение уходит в файл частями размером с буфер
+        for (int offset = 0; offset < value.length; ) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int length = Math.min(buffer.remaining(), value.length - offset);
+            buffer.put(value, offset, length);
+            offset += length;
+        }
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
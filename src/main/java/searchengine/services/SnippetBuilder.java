@@ -0,0 +1,106 @@
+package searchengine.services;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.HtmlUtils;
+import searchengine.repository.PageContentRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Строит сниппет по смещениям лемм из search_index: выбирает окно текста, в которое
+ * попадает больше всего слов запроса, и читает из БД только этот фрагмент Page.text.
+ */
+@Component
+public class SnippetBuilder {
+
+    private static final int SNIPPET_LENGTH = 240;
+    private static final int CONTEXT_BEFORE = 60;
+
+    private final PageContentRepository pageContentRepository;
+    private final TextProcessingService textProcessingService;
+    private final IndexingMetrics indexingMetrics;
+
+    public SnippetBuilder(PageContentRepository pageContentRepository,
+                          TextProcessingService textProcessingService,
+                          IndexingMetrics indexingMetrics) {
+        this.pageContentRepository = pageContentRepository;
+        this.textProcessingService = textProcessingService;
+        this.indexingMetrics = indexingMetrics;
+    }
+
+    public String buildSnippet(Long pageId, Collection<Integer> offsets, Set<String> queryLemmas) {
+        return indexingMetrics.snippetTimer().record(() -> doBuildSnippet(pageId, offsets, queryLemmas));
+    }
+
+    private String doBuildSnippet(Long pageId, Collection<Integer> offsets, Set<String> queryLemmas) {
+        int start = Math.max(0, chooseWindowStart(offsets) - CONTEXT_BEFORE);
+        String fragment = pageContentRepository.findTextFragment(pageId, start + 1, SNIPPET_LENGTH);
+        if (fragment == null || fragment.isEmpty()) {
+            return "";
+        }
+
+        boolean cutAtStart = start > 0;
+        boolean cutAtEnd = fragment.length() == SNIPPET_LENGTH;
+        if (cutAtStart) {
+            int firstSpace = fragment.indexOf(' ');
+            if (firstSpace >= 0) {
+                fragment = fragment.substring(firstSpace + 1);
+            }
+        }
+        if (cutAtEnd) {
+            int lastSpace = fragment.lastIndexOf(' ');
+            if (lastSpace > 0) {
+                fragment = fragment.substring(0, lastSpace);
+            }
+        }
+
+        String snippet = highlight(fragment, queryLemmas);
+        return (cutAtStart ? "..." : "") + snippet + (cutAtEnd ? "..." : "");
+    }
+
+    private int chooseWindowStart(Collection<Integer> offsets) {
+        if (offsets.isEmpty()) {
+            return 0;
+        }
+        List<Integer> sorted = new ArrayList<>(offsets);
+        Collections.sort(sorted);
+
+        int bestStart = sorted.get(0);
+        int bestCount = 0;
+        int right = 0;
+        for (int left = 0; left < sorted.size(); left++) {
+            while (right < sorted.size() && sorted.get(right) < sorted.get(left) + SNIPPET_LENGTH - CONTEXT_BEFORE) {
+                right++;
+            }
+            if (right - left > bestCount) {
+                bestCount = right - left;
+                bestStart = sorted.get(left);
+            }
+        }
+        return bestStart;
+    }
+
+    private String highlight(String fragment, Set<String> queryLemmas) {
+        StringBuilder result = new StringBuilder(fragment.length() + 32);
+        int length = fragment.length();
+        int i = 0;
+        while (i < length) {
+            int start = i;
+            boolean letter = Character.isLetter(fragment.charAt(i));
+            while (i < length && Character.isLetter(fragment.charAt(i)) == letter) {
+                i++;
+            }
+            String part = fragment.substring(start, i);
+            if (letter && !Collections.disjoint(textProcessingService.getLemmaSet(part), queryLemmas)) {
+                result.append("<b>").append(HtmlUtils.htmlEscape(part)).append("</b>");
+            } else {
+                result.append(HtmlUtils.htmlEscape(part));
+            }
+        }
+        return result.toString();
+    }
+}
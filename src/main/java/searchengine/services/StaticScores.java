@@ -0,0 +1,126 @@
+package searchengine.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import searchengine.model.Site;
+import searchengine.repository.PageScoreRepository;
+import searchengine.repository.ScoreEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Статические оценки страниц в памяти: по сайту отсортированный массив id страниц
+ * и оценки, делённые на максимальную по сайту. Поиск берёт оценку двоичным поиском,
+ * без запросов к БД.
+ * <p>
+ * PageRank сайта считает один узел, поэтому остальные подгружают оценки новых поколений
+ * раз в app.siteRegistryRefreshMs и перечитывают оценки старше app.staticScoresMaxAgeMs.
+ * Оценки загружаются при запуске и в фоне, а не в потоке поискового запроса: пока оценок
+ * сайта в памяти нет, у всех его страниц оценка 0.
+ */
+@Component
+public class StaticScores {
+
+    private final PageScoreRepository pageScoreRepository;
+    private final SiteRegistry siteRegistry;
+    private final long maxAgeMs;
+    private final Map<Long, SiteScores> sites = new ConcurrentHashMap<>();
+
+    public StaticScores(PageScoreRepository pageScoreRepository,
+                        SiteRegistry siteRegistry,
+                        @Value("${app.staticScoresMaxAgeMs:600000}") long maxAgeMs) {
+        this.pageScoreRepository = pageScoreRepository;
+        this.siteRegistry = siteRegistry;
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    /**
+     * @return оценка страницы от 0 до 1; 0, если страница ещё не оценивалась
+     * или оценки сайта ещё не загружены
+     */
+    public float score(Site site, Long pageId) {
+        SiteScores scores = sites.get(site.getId());
+        return scores == null ? 0f : scores.score(pageId);
+    }
+
+    /**
+     * @param pageIds id страниц по возрастанию
+     */
+    public void update(Long siteId, long[] pageIds, float[] scores) {
+        put(siteId, SiteScores.of(pageIds, scores, System.currentTimeMillis()));
+    }
+
+    public void forget(Long siteId) {
+        sites.remove(siteId);
+    }
+
+    /**
+     * Загружает оценки действующих поколений, которых ещё нет в памяти или которые устарели,
+     * и убирает оценки поколений, переставших действовать.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${app.siteRegistryRefreshMs:10000}",
+            fixedDelayString = "${app.siteRegistryRefreshMs:10000}")
+    public void refresh() {
+        long now = System.currentTimeMillis();
+        Set<Long> live = new HashSet<>();
+        for (Site site : siteRegistry.liveSites()) {
+            live.add(site.getId());
+            SiteScores current = sites.get(site.getId());
+            if (current == null || now - current.loadedAt() >= maxAgeMs) {
+                put(site.getId(), load(site));
+            }
+        }
+        // Свежие оценки теневого поколения остаются: PageRank считается до переключения
+        sites.entrySet().removeIf(entry -> !live.contains(entry.getKey())
+                && now - entry.getValue().loadedAt() >= maxAgeMs);
+    }
+
+    // Более раннее чтение не затирает оценки, посчитанные или загруженные позже
+    private void put(Long siteId, SiteScores scores) {
+        sites.merge(siteId, scores, (old, fresh) -> fresh.loadedAt() >= old.loadedAt() ? fresh : old);
+    }
+
+    private SiteScores load(Site site) {
+        long loadedAt = System.currentTimeMillis();
+        List<ScoreEntry> entries = new ArrayList<>(pageScoreRepository.findScores(site));
+        entries.sort(Comparator.comparing(ScoreEntry::getPageId));
+        long[] pageIds = new long[entries.size()];
+        float[] scores = new float[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            pageIds[i] = entries.get(i).getPageId();
+            scores[i] = entries.get(i).getScore();
+        }
+        return SiteScores.of(pageIds, scores, loadedAt);
+    }
+
+    private record SiteScores(long[] pageIds, float[] normalized, long loadedAt) {
+
+        static SiteScores of(long[] pageIds, float[] scores, long loadedAt) {
+            float max = 0;
+            for (float score : scores) {
+                max = Math.max(max, score);
+            }
+            float[] normalized = new float[scores.length];
+            for (int i = 0; i < scores.length && max > 0; i++) {
+                normalized[i] = scores[i] / max;
+            }
+            return new SiteScores(pageIds, normalized, loadedAt);
+        }
+
+        float score(Long pageId) {
+            int position = Arrays.binarySearch(pageIds, pageId);
+            return position >= 0 ? normalized[position] : 0f;
+        }
+    }
+}
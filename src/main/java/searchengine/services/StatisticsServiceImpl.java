@@ -1,6 +1,11 @@
 package searchengine.services;
 
 import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import searchengine.config.SiteConfig;
 import searchengine.config.SitesList;
@@ -8,48 +13,70 @@ import searchengine.dto.statistics.DetailedStatisticsItem;
 import searchengine.dto.statistics.StatisticsData;
 import searchengine.dto.statistics.StatisticsResponse;
 import searchengine.dto.statistics.TotalStatistics;
+import searchengine.model.Site;
+import searchengine.model.SiteStatus;
+import searchengine.repository.LemmaRepository;
+import searchengine.repository.PageRepository;
+import searchengine.repository.SiteRepository;
 
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class StatisticsServiceImpl implements StatisticsService {
 
-    private final Random random = new Random();
+    private static final Logger logger = LoggerFactory.getLogger(StatisticsServiceImpl.class);
+
     private final SitesList sites;
+    private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private final LemmaRepository lemmaRepository;
+    private final SiteCounters siteCounters;
 
     @Override
     public StatisticsResponse getStatistics() {
-        String[] statuses = { "INDEXED", "FAILED", "INDEXING" };
-        String[] errors = {
-                "Ошибка индексации: главная страница сайта не доступна",
-                "Ошибка индексации: сайт не доступен",
-                ""
-        };
+        Map<String, Site> sitesByUrl = siteRepository.findByLiveTrue().stream()
+                .collect(Collectors.toMap(Site::getUrl, Function.identity(), (a, b) -> a));
+        // Строящиеся поколения: пока они не переключены, числа берутся из действующего.
+        // Поколение старше действующего брошено упавшим узлом и ждёт удаления
+        Map<String, Site> buildingByUrl = siteRepository.findByLiveFalse().stream()
+                .filter(site -> site.getStatus() == SiteStatus.INDEXING)
+                .filter(site -> sitesByUrl.containsKey(site.getUrl())
+                        && site.getId() > sitesByUrl.get(site.getUrl()).getId())
+                .collect(Collectors.toMap(Site::getUrl, Function.identity(), (a, b) -> a.getId() > b.getId() ? a : b));
 
         TotalStatistics total = new TotalStatistics();
         total.setSites(sites.getSiteConfigs().size());
-        total.setIndexing(true);
 
         List<DetailedStatisticsItem> detailed = new ArrayList<>();
-        List<SiteConfig> sitesList = sites.getSiteConfigs();
-        for(int i = 0; i < sitesList.size(); i++) {
-            SiteConfig siteConfig = sitesList.get(i);
+        for (SiteConfig siteConfig : sites.getSiteConfigs()) {
+            Site site = sitesByUrl.get(siteConfig.getUrl());
+            if (site == null) {
+                continue;
+            }
+            Site status = buildingByUrl.getOrDefault(siteConfig.getUrl(), site);
+            // Поколение, построенное другим узлом: этот узел его страниц не считал
+            if (!siteCounters.isTracked(site.getId())) {
+                siteCounters.reconcile(site.getId(), pageRepository.countBySite(site), lemmaRepository.countBySite(site));
+            }
             DetailedStatisticsItem item = new DetailedStatisticsItem();
             item.setName(siteConfig.getName());
             item.setUrl(siteConfig.getUrl());
-            int pages = random.nextInt(1_000);
-            int lemmas = pages * random.nextInt(1_000);
+            int pages = (int) siteCounters.pages(site.getId());
+            int lemmas = (int) siteCounters.lemmas(site.getId());
             item.setPages(pages);
             item.setLemmas(lemmas);
-            item.setStatus(statuses[i % 3]);
-            item.setError(errors[i % 3]);
-            item.setStatusTime(System.currentTimeMillis() -
-                    (random.nextInt(10_000)));
+            item.setStatus(status.getStatus().name());
+            item.setError(site.getLastError() == null ? "" : site.getLastError());
+            item.setStatusTime(status.getStatusTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
             total.setPages(total.getPages() + pages);
             total.setLemmas(total.getLemmas() + lemmas);
+            total.setIndexing(total.isIndexing() || status.getStatus() == SiteStatus.INDEXING);
             detailed.add(item);
         }
 
@@ -61,4 +88,19 @@ public class StatisticsServiceImpl implements StatisticsService {
         response.setResult(true);
         return response;
     }
+
+    /**
+     * Сверяет счётчики с БД при старте и периодически, исправляя накопившееся расхождение.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${app.statisticsReconcileMs:600000}",
+            fixedDelayString = "${app.statisticsReconcileMs:600000}")
+    public void reconcileCounters() {
+        for (Site site : siteRepository.findAll()) {
+            siteCounters.reconcile(site.getId(),
+                    pageRepository.countBySite(site),
+                    lemmaRepository.countBySite(site));
+        }
+        logger.info("Счётчики статистики сверены с БД");
+    }
 }
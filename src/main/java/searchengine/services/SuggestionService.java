@@ -0,0 +1,274 @@
+package searchengine.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import searchengine.repository.LemmaRepository;
+import searchengine.repository.LemmaWeight;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Подсказки при наборе запроса по словарю лемм в памяти. Словарь — отсортированный массив
+ * лемм с весами (частотами) и дерево отрезков по весам, поэтому top-N продолжений префикса
+ * находится за O(N log M) без обращения к БД. Изменения частот копятся и применяются
+ * фоновой задачей; изменения из транзакции попадают в очередь только после её коммита
+ * (см. {@link TransactionHooks}).
+ */
+@Service
+public class SuggestionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SuggestionService.class);
+    // Меньше стольких новых лемм словарь не перестраивается, пока идёт индексация
+    private static final int MIN_REBUILD_WORDS = 1000;
+
+    private final LemmaRepository lemmaRepository;
+    private final Map<String, Long> pendingDeltas = new ConcurrentHashMap<>();
+    // Леммы, которых ещё нет в словаре; доступ только из synchronized-методов
+    private final TreeMap<String, Long> newWords = new TreeMap<>();
+    private volatile boolean reloadRequested;
+    private volatile Dictionary dictionary = new Dictionary(new String[0], new long[0]);
+
+    public SuggestionService(LemmaRepository lemmaRepository) {
+        this.lemmaRepository = lemmaRepository;
+    }
+
+    /**
+     * Загружает словарь по действующим поколениям сайтов.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void loadDictionary() {
+        reloadRequested = false;
+        // Изменения, уже зафиксированные в БД, войдут в загруженные веса
+        pendingDeltas.clear();
+        newWords.clear();
+        // Порядок строк в БД зависит от collation, а поиск по словарю идёт по String.compareTo
+        List<LemmaWeight> weights = new ArrayList<>(lemmaRepository.findLemmaWeights());
+        weights.sort(Comparator.comparing(LemmaWeight::getLemma));
+        String[] words = new String[weights.size()];
+        long[] values = new long[weights.size()];
+        for (int i = 0; i < weights.size(); i++) {
+            words[i] = weights.get(i).getLemma();
+            values[i] = weights.get(i).getWeight();
+        }
+        dictionary = new Dictionary(words, values);
+        logger.info("Словарь подсказок загружен: {} лемм", words.length);
+    }
+
+    public void onFrequencyChanged(String lemma, long delta) {
+        Map<String, Long> deltas = TransactionHooks.accumulator(this, HashMap::new,
+                committed -> committed.forEach((word, value) -> pendingDeltas.merge(word, value, Long::sum)));
+        (deltas != null ? deltas : pendingDeltas).merge(lemma, delta, Long::sum);
+    }
+
+    /**
+     * Перечитывает словарь в фоновой задаче, например после переключения поколения сайта.
+     */
+    public void requestReload() {
+        reloadRequested = true;
+    }
+
+    public List<String> suggest(String query, int limit) {
+        String normalized = query == null ? "" : query.toLowerCase(Locale.ROOT).stripLeading();
+        int lastSpace = normalized.lastIndexOf(' ');
+        String head = normalized.substring(0, lastSpace + 1);
+        String prefix = normalized.substring(lastSpace + 1);
+        if (prefix.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        List<String> suggestions = new ArrayList<>(limit);
+        for (String word : dictionary.complete(prefix, limit)) {
+            suggestions.add(head + word);
+        }
+        return suggestions;
+    }
+
+    /**
+     * Применяет накопленные изменения частот. Веса известных лемм меняются на месте за O(log M);
+     * новые леммы копятся и вливаются в новый экземпляр словаря слиянием отсортированных
+     * последовательностей, когда их набралось много или изменения перестали поступать.
+     */
+    @Scheduled(fixedDelayString = "${app.suggestRefreshMs:5000}")
+    public synchronized void applyPendingDeltas() {
+        if (reloadRequested) {
+            loadDictionary();
+            return;
+        }
+        Dictionary current = dictionary;
+        boolean idle = pendingDeltas.isEmpty();
+        for (String lemma : pendingDeltas.keySet()) {
+            Long delta = pendingDeltas.remove(lemma);
+            if (delta != null && delta != 0 && !current.update(lemma, delta)) {
+                newWords.merge(lemma, delta, Long::sum);
+            }
+        }
+        int rebuildAt = Math.max(MIN_REBUILD_WORDS, current.words.length / 16);
+        if (!newWords.isEmpty() && (idle || newWords.size() >= rebuildAt)) {
+            dictionary = current.merge(newWords);
+            newWords.clear();
+        }
+    }
+
+    private static final class Dictionary {
+
+        private final String[] words;
+        private final long[] weights;
+        private final int size;
+        private final int[] tree;
+        // update меняет weights и tree на месте, пока complete по ним идёт
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        Dictionary(String[] words, long[] weights) {
+            this.words = words;
+            this.weights = weights;
+            int treeSize = 1;
+            while (treeSize < words.length) {
+                treeSize <<= 1;
+            }
+            this.size = treeSize;
+            this.tree = new int[2 * treeSize];
+            Arrays.fill(tree, -1);
+            for (int i = 0; i < words.length; i++) {
+                tree[treeSize + i] = i;
+            }
+            for (int node = treeSize - 1; node > 0; node--) {
+                tree[node] = heavier(tree[2 * node], tree[2 * node + 1]);
+            }
+        }
+
+        List<String> complete(String prefix, int limit) {
+            int from = lowerBound(prefix);
+            int to = lowerBound(prefix + Character.MAX_VALUE);
+            List<String> result = new ArrayList<>(limit);
+            if (from >= to) {
+                return result;
+            }
+
+            lock.readLock().lock();
+            try {
+                // Очередь отрезков, упорядоченная по весу самой частой леммы отрезка
+                PriorityQueue<int[]> ranges = new PriorityQueue<>((a, b) -> Long.compare(weights[b[2]], weights[a[2]]));
+                ranges.add(new int[]{from, to, maxIndex(from, to)});
+                while (result.size() < limit && !ranges.isEmpty()) {
+                    int[] range = ranges.poll();
+                    int best = range[2];
+                    // Остальные отрезки не тяжелее: леммы с нулевым весом остались от удалённых страниц
+                    if (weights[best] <= 0) {
+                        break;
+                    }
+                    result.add(words[best]);
+                    if (range[0] < best) {
+                        ranges.add(new int[]{range[0], best, maxIndex(range[0], best)});
+                    }
+                    if (best + 1 < range[1]) {
+                        ranges.add(new int[]{best + 1, range[1], maxIndex(best + 1, range[1])});
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            return result;
+        }
+
+        /**
+         * Меняет вес леммы и путь от её листа до корня дерева.
+         *
+         * @return false, если леммы нет в словаре
+         */
+        boolean update(String word, long delta) {
+            int index = lowerBound(word);
+            if (index >= words.length || !words[index].equals(word)) {
+                return false;
+            }
+            lock.writeLock().lock();
+            try {
+                weights[index] = Math.max(0, weights[index] + delta);
+                for (int node = (size + index) >> 1; node > 0; node >>= 1) {
+                    tree[node] = heavier(tree[2 * node], tree[2 * node + 1]);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return true;
+        }
+
+        // Заодно выбрасывает леммы, вес которых упал до нуля
+        Dictionary merge(TreeMap<String, Long> deltas) {
+            List<String> mergedWords = new ArrayList<>(words.length + deltas.size());
+            List<Long> mergedWeights = new ArrayList<>(words.length + deltas.size());
+            int i = 0;
+            for (Map.Entry<String, Long> delta : deltas.entrySet()) {
+                while (i < words.length && words[i].compareTo(delta.getKey()) < 0) {
+                    mergedWords.add(words[i]);
+                    mergedWeights.add(weights[i++]);
+                }
+                long weight = delta.getValue();
+                if (i < words.length && words[i].equals(delta.getKey())) {
+                    weight += weights[i++];
+                }
+                if (weight > 0) {
+                    mergedWords.add(delta.getKey());
+                    mergedWeights.add(weight);
+                }
+            }
+            while (i < words.length) {
+                mergedWords.add(words[i]);
+                mergedWeights.add(weights[i++]);
+            }
+            return new Dictionary(mergedWords.toArray(new String[0]),
+                    mergedWeights.stream().mapToLong(Long::longValue).toArray());
+        }
+
+        private int lowerBound(String key) {
+            int low = 0;
+            int high = words.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (words[mid].compareTo(key) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private int maxIndex(int from, int to) {
+            int best = -1;
+            for (int l = from + size, r = to + size; l < r; l >>= 1, r >>= 1) {
+                if ((l & 1) == 1) {
+                    best = heavier(best, tree[l++]);
+                }
+                if ((r & 1) == 1) {
+                    best = heavier(best, tree[--r]);
+                }
+            }
+            return best;
+        }
+
+        private int heavier(int a, int b) {
+            if (a < 0) {
+                return b;
+            }
+            if (b < 0) {
+                return a;
+            }
+            return weights[b] > weights[a] ? b : a;
+        }
+    }
+}
@@ -1,9 +1,32 @@
 package searchengine.services;
 
+import org.jsoup.nodes.Document;
+
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public interface TextProcessingService {
 
     Map<String, Integer> collectLemmas(String text);
 
+    Set<String> getLemmaSet(String text);
+
+    /**
+     * Для каждой леммы возвращает смещение её первого вхождения и позиции всех вхождений.
+     */
+    Map<String, LemmaOccurrences> collectOccurrences(String text);
+
+    /**
+     * Нормальные формы слов текста по порядку; для служебных слов — пустая строка.
+     */
+    List<String> lemmatizeWords(String text);
+
+    /**
+     * Текст и заголовок берутся из уже разобранного документа: страница разбирается один раз.
+     */
+    String extractText(Document document);
+
+    String extractTitle(Document document);
+
 }
@@ -2,8 +2,10 @@ package searchengine.services;
 
 import org.apache.lucene.morphology.LuceneMorphology;
 import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import org.jsoup.nodes.Document;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -54,6 +56,62 @@ public class TextProcessingServiceImpl implements TextProcessingService {
     }
 
 
+    @Override
+    public Map<String, LemmaOccurrences> collectOccurrences(String text) {
+        Map<String, LemmaOccurrences> occurrences = new HashMap<>();
+        Map<String, String> normalFormCache = new HashMap<>();
+        forEachWord(text, (word, offset, position) -> {
+            String normalWord = normalFormCache.computeIfAbsent(word, this::getNormalForm);
+            if (!normalWord.isEmpty()) {
+                occurrences.computeIfAbsent(normalWord, w -> new LemmaOccurrences(offset))
+                        .addPosition(position);
+            }
+        });
+        return occurrences;
+    }
+
+    @Override
+    public List<String> lemmatizeWords(String text) {
+        List<String> lemmas = new ArrayList<>();
+        forEachWord(text, (word, offset, position) -> lemmas.add(getNormalForm(word)));
+        return lemmas;
+    }
+
+    /**
+     * Обходит русские слова текста. Позиция слова считается по всем словам, включая
+     * служебные, чтобы расстояния между словами в запросе и на странице совпадали.
+     */
+    private void forEachWord(String text, WordConsumer consumer) {
+        int length = text.length();
+        int position = 0;
+        int i = 0;
+        while (i < length) {
+            if (!isRussianLetter(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < length && isRussianLetter(text.charAt(i))) {
+                i++;
+            }
+            consumer.accept(text.substring(start, i).toLowerCase(Locale.ROOT), start, position++);
+        }
+    }
+
+    private interface WordConsumer {
+        void accept(String word, int offset, int position);
+    }
+
+    @Override
+    public String extractText(Document document) {
+        return document.text();
+    }
+
+    @Override
+    public String extractTitle(Document document) {
+        return document.title();
+    }
+
     public Set<String> getLemmaSet(String text) {
         String[] textArray = arrayContainsRussianWords(text);
         Set<String> lemmaSet = new HashSet<>();
@@ -69,6 +127,19 @@ public class TextProcessingServiceImpl implements TextProcessingService {
         return lemmaSet;
     }
 
+    // Пустая строка означает, что слово не индексируется (частица, союз и т.п.)
+    private String getNormalForm(String word) {
+        if (anyWordBaseBelongToParticle(luceneMorphology.getMorphInfo(word))) {
+            return "";
+        }
+        List<String> normalForms = luceneMorphology.getNormalForms(word);
+        return normalForms.isEmpty() ? "" : normalForms.get(0);
+    }
+
+    private static boolean isRussianLetter(char c) {
+        return (c >= 'а' && c <= 'я') || (c >= 'А' && c <= 'Я');
+    }
+
     private boolean anyWordBaseBelongToParticle(List<String> wordBaseForms) {
         return wordBaseForms.stream().anyMatch(this::hasParticleProperty);
     }
@@ -1,5 +1,7 @@
 package searchengine.services;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,8 +19,17 @@ public class ThreadManagerImpl implements ThreadManager {
     private final ForkJoinPool forkJoinPool;
 
     @Autowired
-    public ThreadManagerImpl() {
+    public ThreadManagerImpl(MeterRegistry meterRegistry) {
         this.forkJoinPool = ForkJoinPool.commonPool();
+        Gauge.builder("indexing.executor.active", forkJoinPool, ForkJoinPool::getActiveThreadCount)
+                .description("Активные потоки пула индексации")
+                .register(meterRegistry);
+        Gauge.builder("indexing.executor.queued", forkJoinPool, ForkJoinPool::getQueuedSubmissionCount)
+                .description("Задачи индексации, ожидающие в очереди пула")
+                .register(meterRegistry);
+        Gauge.builder("indexing.executor.pool.size", forkJoinPool, ForkJoinPool::getPoolSize)
+                .description("Число потоков пула индексации")
+                .register(meterRegistry);
     }
 
     @Override
@@ -0,0 +1,65 @@
+package searchengine.services;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Изменения состояния в памяти (счётчики, словарь подсказок, поколения кэша, реестр сайтов),
+ * которые применяются только после коммита транзакции, внесшей изменения в БД. Так откаченный
+ * пакет BatchPageWriter, который затем повторяется по одной странице, не учитывается дважды,
+ * а параллельный поиск не видит ещё не зафиксированных данных. Вне транзакции изменения
+ * применяются сразу.
+ */
+final class TransactionHooks {
+
+    private TransactionHooks() {
+    }
+
+    static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Накопитель изменений владельца owner в текущей транзакции: создаётся при первом
+     * обращении и после коммита передаётся в onCommit. Синхронизация регистрируется одна
+     * на транзакцию, а не на каждое изменение.
+     *
+     * @return накопитель или null вне транзакции
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T accumulator(Object owner, Supplier<T> factory, Consumer<T> onCommit) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        T existing = (T) TransactionSynchronizationManager.getResource(owner);
+        if (existing != null) {
+            return existing;
+        }
+        T created = factory.get();
+        TransactionSynchronizationManager.bindResource(owner, created);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                onCommit.accept(created);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(owner);
+            }
+        });
+        return created;
+    }
+}
@@ -0,0 +1,36 @@
+package searchengine.services;
+
+/**
+ * Приведение ссылок со страниц сайта к абсолютному URL и к пути относительно корня сайта.
+ */
+public final class UrlNormalizer {
+
+    private UrlNormalizer() {
+    }
+
+    /**
+     * Возвращает абсолютный URL ссылки или null, если ссылка ведёт не на HTTP-ресурс
+     * (tel:, mailto:, javascript: и т.п.).
+     */
+    public static String absoluteUrl(String siteUrl, String href) {
+        if (href.startsWith("http")) {
+            return href;
+        }
+        int colon = href.indexOf(':');
+        int slash = href.indexOf('/');
+        if (colon >= 0 && (slash < 0 || colon < slash)) {
+            return null;
+        }
+        return siteUrl + href;
+    }
+
+    public static String relativePath(String siteUrl, String url) {
+        if (siteUrl.endsWith("/")) {
+            siteUrl = siteUrl.substring(0, siteUrl.length() - 1);
+        }
+        if (url.startsWith(siteUrl)) {
+            url = url.substring(siteUrl.length());
+        }
+        return url.isEmpty() ? "/" : url;
+    }
+}
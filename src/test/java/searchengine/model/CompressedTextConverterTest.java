@@ -0,0 +1,77 @@
+package searchengine.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressedTextConverterTest {
+
+    private static final String HTML = "<html><body>" + "<p>Привет, мир! Hello, world.</p>".repeat(2000)
+            + "</body></html>";
+
+    private final CompressedTextConverter converter = new CompressedTextConverter();
+
+    @Test
+    void deflateRoundTrip() {
+        byte[] column = converter.convertToDatabaseColumn(HTML);
+
+        assertEquals(1, column[0]);
+        assertTrue(column.length < HTML.getBytes(StandardCharsets.UTF_8).length / 10);
+        assertEquals(HTML, converter.convertToEntityAttribute(column));
+    }
+
+    @Test
+    void uncompressedRoundTrip() {
+        converter.setCodec(ContentCodec.NONE);
+        byte[] column = converter.convertToDatabaseColumn(HTML);
+
+        assertEquals(0, column[0]);
+        assertEquals(HTML.getBytes(StandardCharsets.UTF_8).length + 1, column.length);
+        assertEquals(HTML, converter.convertToEntityAttribute(column));
+    }
+
+    @Test
+    void readsValuesWrittenWithOtherCodec() {
+        byte[] deflated = converter.convertToDatabaseColumn(HTML);
+        converter.setCodec(ContentCodec.NONE);
+
+        assertEquals(HTML, converter.convertToEntityAttribute(deflated));
+    }
+
+    @Test
+    void readsLegacyTextWithoutHeader() {
+        assertEquals("<html>старая страница</html>",
+                converter.convertToEntityAttribute("<html>старая страница</html>".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void keepsNullAndEmptyValues() {
+        assertNull(converter.convertToDatabaseColumn(null));
+        assertNull(converter.convertToEntityAttribute(null));
+        assertEquals("", converter.convertToEntityAttribute(converter.convertToDatabaseColumn("")));
+        assertEquals("", converter.convertToEntityAttribute(new byte[0]));
+    }
+
+    @Test
+    void rejectsTruncatedValue() {
+        byte[] column = converter.convertToDatabaseColumn(HTML);
+        byte[] truncated = Arrays.copyOf(column, column.length / 2);
+
+        assertThrows(IllegalStateException.class, () -> converter.convertToEntityAttribute(truncated));
+    }
+
+    @Test
+    void rejectsUnknownCodecSetting() {
+        assertEquals(ContentCodec.DEFLATE, ContentCodec.fromSetting("deflate"));
+        assertEquals(ContentCodec.NONE, ContentCodec.fromSetting("none"));
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> ContentCodec.fromSetting("zstd"));
+        assertTrue(error.getMessage().contains("deflate, none"));
+    }
+}
@@ -0,0 +1,84 @@
+package searchengine.services;
+
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import searchengine.model.Site;
+import searchengine.repository.PageRepository;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class NearDuplicateIndexTest {
+
+    private static final long FINGERPRINT = 0x0123_4567_89AB_CDEFL;
+
+    private final PageRepository pageRepository = mock(PageRepository.class);
+    // maxDistance = 3: отпечаток делится на четыре блока по 16 бит
+    private final NearDuplicateIndex index = new NearDuplicateIndex(pageRepository, true, 3, 5, 600_000);
+    private final Site site = new Site();
+
+    @BeforeEach
+    void setUp() {
+        site.setId(1L);
+        when(pageRepository.findFingerprints(any())).thenReturn(List.of());
+        index.add(site, 10L, "/news/1", FINGERPRINT);
+    }
+
+    @Test
+    void findsPageDifferingInEveryBlockButOne() {
+        long near = FINGERPRINT ^ (1L | 1L << 16 | 1L << 32);
+
+        assertEquals(10L, index.findCanonical(site, "/print/news/1", near));
+    }
+
+    @Test
+    void findsPageDifferingWithinOneBlock() {
+        long near = FINGERPRINT ^ (1L << 50 | 1L << 55 | 1L << 63);
+
+        assertEquals(10L, index.findCanonical(site, "/print/news/1", near));
+    }
+
+    @Test
+    void ignoresPageFartherThanMaxDistance() {
+        assertNull(index.findCanonical(site, "/other", FINGERPRINT ^ (1L | 1L << 16 | 1L << 32 | 1L << 48)));
+        assertNull(index.findCanonical(site, "/other", FINGERPRINT ^ 0xFL));
+    }
+
+    @Test
+    void pageIsNotDuplicateOfItself() {
+        assertNull(index.findCanonical(site, "/news/1", FINGERPRINT));
+    }
+
+    @Test
+    void newFingerprintReplacesOldOne() {
+        index.add(site, 10L, "/news/1", ~FINGERPRINT);
+
+        assertNull(index.findCanonical(site, "/other", FINGERPRINT));
+        assertEquals(10L, index.findCanonical(site, "/other", ~FINGERPRINT));
+    }
+
+    @Test
+    void pageWithoutFingerprintIsForgotten() {
+        index.add(site, 10L, "/news/1", 0);
+
+        assertNull(index.findCanonical(site, "/other", FINGERPRINT));
+        assertNull(index.findCanonical(site, "/other", 0));
+    }
+
+    @Test
+    void fingerprintUsesMainContentOnly() {
+        String article = "<main>" + "Один два три четыре пять шесть семь восемь девять десять. ".repeat(3) + "</main>";
+        long withMenu = index.fingerprint(Jsoup.parse("<nav>Главная Новости Контакты О нас</nav>" + article));
+        long withoutMenu = index.fingerprint(Jsoup.parse(article));
+
+        assertEquals(withoutMenu, withMenu);
+        assertEquals(0, new NearDuplicateIndex(pageRepository, false, 3, 5, 600_000)
+                .fingerprint(Jsoup.parse(article)));
+    }
+}
@@ -0,0 +1,100 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PageRankServiceTest {
+
+    private static final double EPSILON = 1e-4;
+
+    private final PageRankService service = new PageRankService(null, null, null, null, null, null, null, null, null,
+            2, 0.85, 100, 1e-9, 1000);
+
+    @AfterEach
+    void tearDown() {
+        service.stop();
+    }
+
+    @Test
+    void emptyGraphHasNoScores() throws Exception {
+        assertEquals(0, service.rank(graph(0)).length);
+    }
+
+    @Test
+    void singlePageGetsAllWeight() throws Exception {
+        float[] scores = service.rank(graph(1));
+
+        assertEquals(1, scores.length);
+        assertEquals(1.0, scores[0], EPSILON);
+    }
+
+    @Test
+    void cycleSplitsWeightEvenly() throws Exception {
+        float[] scores = service.rank(graph(3, 0, 1, 1, 2, 2, 0));
+
+        for (float score : scores) {
+            assertEquals(1.0 / 3, score, EPSILON);
+        }
+    }
+
+    @Test
+    void danglingPageSpreadsItsWeightOverAllPages() throws Exception {
+        // 0 -> 1, у страницы 1 исходящих ссылок нет:
+        // r0 = 0.075 + 0.425 r1, r1 = 0.075 + 0.425 r1 + 0.85 r0
+        float[] scores = service.rank(graph(2, 0, 1));
+
+        assertEquals(0.350877, scores[0], EPSILON);
+        assertEquals(0.649123, scores[1], EPSILON);
+    }
+
+    @Test
+    void linkedPageOutranksLinkingPages() throws Exception {
+        // Страницы 1..4 ссылаются на главную 0, а она — только на 1
+        float[] scores = service.rank(graph(5, 1, 0, 2, 0, 3, 0, 4, 0, 0, 1));
+
+        double sum = 0;
+        for (float score : scores) {
+            sum += score;
+        }
+        assertEquals(1.0, sum, EPSILON);
+        assertTrue(scores[0] > scores[1]);
+        assertTrue(scores[1] > scores[2]);
+        assertEquals(scores[2], scores[3], EPSILON);
+        assertEquals(scores[3], scores[4], EPSILON);
+    }
+
+    @Test
+    void largeGraphKeepsAllEdges() throws Exception {
+        // Больше рёбер, чем начальная ёмкость EdgeList: все страницы ссылаются на страницу 0
+        int pages = 3000;
+        int[] edges = new int[2 * (pages - 1)];
+        for (int page = 1; page < pages; page++) {
+            edges[2 * (page - 1)] = page;
+        }
+        float[] scores = service.rank(graph(pages, edges));
+
+        double sum = 0;
+        for (int page = 1; page < pages; page++) {
+            sum += scores[page];
+            assertEquals(scores[1], scores[page], EPSILON);
+        }
+        assertEquals(1.0, sum + scores[0], 1e-3);
+        assertTrue(scores[0] > 0.4);
+    }
+
+    // Рёбра заданы парами from, to
+    private static PageRankService.LinkGraph graph(int pages, int... edges) {
+        long[] pageIds = new long[pages];
+        for (int i = 0; i < pages; i++) {
+            pageIds[i] = 100 + i;
+        }
+        PageRankService.EdgeList list = new PageRankService.EdgeList();
+        for (int i = 0; i < edges.length; i += 2) {
+            list.add(edges[i], edges[i + 1]);
+        }
+        return new PageRankService.LinkGraph(pageIds, list);
+    }
+}
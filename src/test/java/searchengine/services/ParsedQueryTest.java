@@ -0,0 +1,104 @@
+package searchengine.services;
+
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParsedQueryTest {
+
+    private final TextProcessingService text = new WordsAsLemmas();
+
+    @Test
+    void collectsLemmasAndQuotedPhrases() {
+        ParsedQuery query = ParsedQuery.parse("кошка \"рыжая и собака\"", text);
+
+        assertEquals(List.of("кошка", "рыжая", "собака"), List.copyOf(query.getLemmas()));
+        assertEquals(List.of(List.of(new ParsedQuery.PhraseTerm("рыжая", 0), new ParsedQuery.PhraseTerm("собака", 2))),
+                query.getPhrases());
+    }
+
+    @Test
+    void singleQuotedWordIsNotPhrase() {
+        ParsedQuery query = ParsedQuery.parse("\"кошка\" собака", text);
+
+        assertEquals(Set.of("кошка", "собака"), query.getLemmas());
+        assertTrue(query.getPhrases().isEmpty());
+    }
+
+    @Test
+    void phraseStartsAtFirstSignificantWord() {
+        ParsedQuery query = ParsedQuery.parse("\"и на кошка собака\"", text);
+
+        assertEquals(List.of(List.of(new ParsedQuery.PhraseTerm("кошка", 0), new ParsedQuery.PhraseTerm("собака", 1))),
+                query.getPhrases());
+    }
+
+    @Test
+    void stopWordsOnlyGiveEmptyQuery() {
+        assertTrue(ParsedQuery.parse("и на", text).isEmpty());
+        assertTrue(ParsedQuery.parse("", text).isEmpty());
+    }
+
+    @Test
+    void cacheKeyIgnoresWordOrderButNotPhrases() {
+        String plain = ParsedQuery.parse("кошка собака", text).cacheKey();
+
+        assertEquals(plain, ParsedQuery.parse("собака кошка", text).cacheKey());
+        assertEquals(plain, ParsedQuery.parse("Кошка и собака", text).cacheKey());
+        assertNotEquals(plain, ParsedQuery.parse("\"кошка собака\"", text).cacheKey());
+        assertNotEquals(ParsedQuery.parse("\"кошка собака\"", text).cacheKey(),
+                ParsedQuery.parse("\"собака кошка\"", text).cacheKey());
+    }
+
+    /**
+     * Лемма слова — само слово в нижнем регистре, «и» и «на» — служебные слова.
+     */
+    private static class WordsAsLemmas implements TextProcessingService {
+
+        @Override
+        public List<String> lemmatizeWords(String text) {
+            List<String> words = new ArrayList<>();
+            for (String word : text.trim().split("\\s+")) {
+                if (!word.isEmpty()) {
+                    String lemma = word.toLowerCase(Locale.ROOT);
+                    words.add(lemma.equals("и") || lemma.equals("на") ? "" : lemma);
+                }
+            }
+            return words;
+        }
+
+        @Override
+        public Map<String, Integer> collectLemmas(String text) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Set<String> getLemmaSet(String text) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Map<String, LemmaOccurrences> collectOccurrences(String text) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String extractText(Document document) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String extractTitle(Document document) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
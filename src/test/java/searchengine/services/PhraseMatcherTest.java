@@ -0,0 +1,53 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PhraseMatcherTest {
+
+    private static final List<ParsedQuery.PhraseTerm> CAT_DOG = List.of(
+            new ParsedQuery.PhraseTerm("кошка", 0), new ParsedQuery.PhraseTerm("собака", 1));
+
+    @Test
+    void findsWordsStandingNextToEachOther() {
+        Map<String, int[]> positions = Map.of("кошка", new int[]{3, 10}, "собака", new int[]{11});
+
+        assertTrue(PhraseMatcher.containsPhrase(CAT_DOG, positions));
+    }
+
+    @Test
+    void rejectsWordsInOtherOrderOrFarApart() {
+        assertFalse(PhraseMatcher.containsPhrase(CAT_DOG,
+                Map.of("кошка", new int[]{3, 10}, "собака", new int[]{2, 9, 12})));
+        assertFalse(PhraseMatcher.containsPhrase(CAT_DOG, Map.of("кошка", new int[]{3})));
+        assertFalse(PhraseMatcher.containsPhrase(CAT_DOG, Map.of("собака", new int[]{4})));
+    }
+
+    @Test
+    void keepsShiftOfSkippedStopWords() {
+        // «кошка и собака»: служебное слово занимает позицию, но в запрос не попадает
+        List<ParsedQuery.PhraseTerm> phrase = List.of(
+                new ParsedQuery.PhraseTerm("кошка", 0), new ParsedQuery.PhraseTerm("собака", 2));
+
+        assertTrue(PhraseMatcher.containsPhrase(phrase, Map.of("кошка", new int[]{3}, "собака", new int[]{5})));
+        assertFalse(PhraseMatcher.containsPhrase(phrase, Map.of("кошка", new int[]{3}, "собака", new int[]{4})));
+    }
+
+    @Test
+    void measuresShortestWindowWithEveryLemma() {
+        assertEquals(6, PhraseMatcher.minimalSpan(List.of(new int[]{1, 10}, new int[]{5}, new int[]{7, 12})));
+        assertEquals(1, PhraseMatcher.minimalSpan(List.of(new int[]{4, 9})));
+        assertEquals(2, PhraseMatcher.minimalSpan(List.of(new int[]{0, 20}, new int[]{21})));
+    }
+
+    @Test
+    void windowIsUnboundedWhenLemmaIsMissing() {
+        assertEquals(Integer.MAX_VALUE, PhraseMatcher.minimalSpan(List.of(new int[]{1}, new int[0])));
+    }
+}
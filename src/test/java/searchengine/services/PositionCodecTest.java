@@ -0,0 +1,30 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PositionCodecTest {
+
+    @Test
+    void decodesWhatWasEncoded() {
+        int[] positions = {0, 1, 5, 127, 128, 300, 20_000, 1_000_000, Integer.MAX_VALUE};
+
+        assertArrayEquals(positions, PositionCodec.decode(PositionCodec.encode(positions)));
+    }
+
+    @Test
+    void storesSmallGapsInOneByte() {
+        assertEquals(4, PositionCodec.encode(new int[]{1, 2, 3, 127}).length);
+        // Разность 128 уже не помещается в семь бит
+        assertEquals(3, PositionCodec.encode(new int[]{0, 128}).length);
+    }
+
+    @Test
+    void handlesEmptyAndMissingData() {
+        assertEquals(0, PositionCodec.encode(new int[0]).length);
+        assertArrayEquals(new int[0], PositionCodec.decode(new byte[0]));
+        assertArrayEquals(new int[0], PositionCodec.decode(null));
+    }
+}
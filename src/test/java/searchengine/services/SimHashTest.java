@@ -0,0 +1,52 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SimHashTest {
+
+    private static final String TEXT = "Учёные впервые получили подробные снимки поверхности далёкой планеты. "
+            + "Изображения помогут понять, как формируются горы и кратеры в условиях слабой гравитации. "
+            + "Исследование продолжалось несколько лет и объединило специалистов из разных стран. "
+            + "Следующий этап работы начнётся после запуска нового телескопа в конце года. "
+            + "Первые данные с аппарата пришли ещё весной, но их обработка заняла больше времени, чем ожидалось. "
+            + "Команде пришлось заново откалибровать камеры и учесть влияние пыли на качество снимков. "
+            + "Теперь исследователи составляют карту высот и ищут следы древних потоков лавы. "
+            + "По словам руководителя проекта, часть результатов будет опубликована в открытом доступе. "
+            + "Любители астрономии смогут сами сравнить старые и новые изображения одних и тех же районов. "
+            + "Обсерватория также планирует серию лекций для школьников и студентов о ходе миссии.";
+
+    @Test
+    void nearlyEqualTextsHaveCloseFingerprints() {
+        // Замена одного слова меняет три шингла из сотни с лишним
+        long original = SimHash.fingerprint(TEXT, 10);
+        long edited = SimHash.fingerprint(TEXT.replace("несколько лет", "пять лет"), 10);
+
+        assertNotEquals(0, original);
+        assertTrue(SimHash.distance(original, edited) <= 3, () -> "distance " + SimHash.distance(original, edited));
+    }
+
+    @Test
+    void differentTextsHaveDistantFingerprints() {
+        long other = SimHash.fingerprint("Городской совет утвердил новый план развития общественного транспорта. "
+                + "Автобусные маршруты изменят весной, а трамвайные линии продлят до новых районов. "
+                + "Жители смогут обсудить проект на открытых слушаниях в следующем месяце.", 10);
+
+        assertTrue(SimHash.distance(SimHash.fingerprint(TEXT, 10), other) > 12);
+    }
+
+    @Test
+    void ignoresCaseAndPunctuation() {
+        assertEquals(SimHash.fingerprint(TEXT, 10),
+                SimHash.fingerprint(TEXT.toUpperCase().replace(",", " ").replace(".", " !"), 10));
+    }
+
+    @Test
+    void shortTextHasNoFingerprint() {
+        assertEquals(0, SimHash.fingerprint("Всего пять слов в тексте", 10));
+        assertEquals(0, SimHash.fingerprint("два слова", 0));
+    }
+}
@@ -0,0 +1,108 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshotReaderTest {
+
+    // Длиннее буфера SnapshotWriter: значение уходит в файл частями
+    private static final String LONG_TEXT = "Длинный текст страницы. ".repeat(50_000);
+
+    private static final SnapshotFormat.PageRecord MAIN = new SnapshotFormat.PageRecord(
+            "/", 200, "Главная", 0x0123_4567_89AB_CDEFL, 0.42f, "Добро пожаловать", "<html>…</html>", "/a\n/b");
+    private static final SnapshotFormat.PageRecord ARTICLE = new SnapshotFormat.PageRecord(
+            "/a", 200, null, null, Float.NaN, LONG_TEXT, null, "");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsWhatWasWritten() throws IOException {
+        Path file = directory.resolve("index.snapshot");
+        int[] positions = {3, 17, 250};
+        long size;
+        try (SnapshotWriter writer = new SnapshotWriter(file)) {
+            writer.site("http://example.com", "Пример");
+            writer.page(MAIN);
+            writer.page(ARTICLE);
+            writer.lemma(new SnapshotFormat.LemmaRecord("текст", 2, new int[]{0, 1}, new float[]{1f, 3.5f},
+                    new int[]{0, 8}, new byte[][]{PositionCodec.encode(positions), null}));
+            writer.siteEnd();
+            size = writer.finish();
+        }
+        assertEquals(Files.size(file), size);
+
+        try (SnapshotReader reader = new SnapshotReader(file)) {
+            assertEquals(SnapshotFormat.SITE, reader.tag());
+            assertArrayEquals(new String[]{"http://example.com", "Пример"}, reader.site());
+            assertEquals(SnapshotFormat.PAGE, reader.tag());
+            assertEquals(MAIN, reader.page());
+            assertEquals(SnapshotFormat.PAGE, reader.tag());
+            assertEquals(ARTICLE, reader.page());
+
+            assertEquals(SnapshotFormat.LEMMA, reader.tag());
+            SnapshotFormat.LemmaRecord lemma = reader.lemma();
+            assertEquals("текст", lemma.lemma());
+            assertEquals(2, lemma.frequency());
+            assertArrayEquals(new int[]{0, 1}, lemma.pages());
+            assertArrayEquals(new float[]{1f, 3.5f}, lemma.ranks());
+            assertArrayEquals(new int[]{0, 8}, lemma.firstOffsets());
+            assertArrayEquals(positions, PositionCodec.decode(lemma.positions()[0]));
+            assertNull(lemma.positions()[1]);
+
+            assertEquals(SnapshotFormat.SITE_END, reader.tag());
+            assertEquals(SnapshotFormat.END, reader.tag());
+        }
+    }
+
+    @Test
+    void reportsTruncatedSnapshot() throws IOException {
+        Path file = directory.resolve("index.snapshot");
+        try (SnapshotWriter writer = new SnapshotWriter(file)) {
+            writer.site("http://example.com", "Пример");
+            writer.page(ARTICLE);
+            writer.siteEnd();
+            writer.finish();
+        }
+        Path truncated = directory.resolve("truncated.snapshot");
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length / 2));
+
+        try (SnapshotReader reader = new SnapshotReader(truncated)) {
+            assertEquals(SnapshotFormat.SITE, reader.tag());
+            reader.site();
+            assertEquals(SnapshotFormat.PAGE, reader.tag());
+            EOFException error = assertThrows(EOFException.class, reader::page);
+            assertEquals("Снимок индекса обрезан", error.getMessage());
+        }
+    }
+
+    @Test
+    void rejectsFileThatIsNotSnapshot() throws IOException {
+        Path file = directory.resolve("page.html");
+        Files.writeString(file, "<html><body>не снимок</body></html>");
+
+        IOException error = assertThrows(IOException.class, () -> new SnapshotReader(file).close());
+        assertTrue(error.getMessage().startsWith("Файл не является снимком индекса"));
+    }
+
+    @Test
+    void rejectsTooShortFile() throws IOException {
+        Path file = directory.resolve("empty.snapshot");
+        Files.write(file, new byte[]{0x53, 0x53});
+
+        assertThrows(EOFException.class, () -> new SnapshotReader(file).close());
+    }
+}